@@ -0,0 +1,94 @@
+package com.coloza.demo.springtest.cache;
+
+import com.coloza.demo.springtest.model.InventoryRecord;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the last inventory record we received from the Inventory Manager for each product, so that reads can still
+ * be answered while the Inventory Manager is unavailable. Whenever a product's record changes an
+ * {@link InventoryRecordChangedEvent} is published.
+ */
+@Component
+@RequiredArgsConstructor
+public class InventoryRecordCache {
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ConcurrentMap<Integer, CachedRecord> records = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the last known record for the specified product.
+     *
+     * @param productId The product ID.
+     * @return The cached record, if any.
+     */
+    public Optional<InventoryRecord> get(Integer productId) {
+        return Optional.ofNullable(records.get(productId)).map(CachedRecord::record);
+    }
+
+    /**
+     * Returns the cached record for the specified product if it was received within the specified time.
+     *
+     * @param productId The product ID.
+     * @param maxAge    The maximum age of the record.
+     * @return The cached record, if any and fresh enough.
+     */
+    public Optional<InventoryRecord> getIfFresh(Integer productId, Duration maxAge) {
+        var cutoff = System.currentTimeMillis() - maxAge.toMillis();
+        return Optional.ofNullable(records.get(productId))
+                .filter(cached -> cached.fetchedAt() >= cutoff)
+                .map(CachedRecord::record);
+    }
+
+    /**
+     * Stores the specified record as the latest known state of its product.
+     *
+     * @param record The record received from the Inventory Manager.
+     */
+    public void put(InventoryRecord record) {
+        var previous = records.put(record.getProductId(), new CachedRecord(record, System.currentTimeMillis()));
+        if (previous == null || !previous.record().equals(record)) {
+            eventPublisher.publishEvent(new InventoryRecordChangedEvent(record));
+        }
+    }
+
+    /**
+     * Forgets the record for the specified product, e.g. because the Inventory Manager no longer knows it.
+     *
+     * @param productId The product ID.
+     */
+    public void evict(Integer productId) {
+        records.remove(productId);
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    Collection<CachedRecord> entries() {
+        return records.values();
+    }
+
+    /**
+     * Restores a record from a snapshot, unless a newer one has been received in the meantime.
+     *
+     * @param cached The record and the time it was originally received.
+     */
+    void restore(CachedRecord cached) {
+        records.merge(cached.record().getProductId(), cached,
+                (current, restored) -> current.fetchedAt() >= restored.fetchedAt() ? current : restored);
+    }
+
+    /**
+     * A cached record and the wall clock time, in milliseconds, at which it was received.
+     */
+    record CachedRecord(InventoryRecord record, long fetchedAt) {
+    }
+}
@@ -0,0 +1,91 @@
+package com.coloza.demo.springtest.cache;
+
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshots the {@link InventoryRecordCache} to local disk periodically and on shutdown, and reloads it at startup,
+ * so that a restarted node can answer reads straight away instead of sending a stampede to the Inventory Manager.
+ * Enabled by setting {@code inventoryManager.cache.snapshotPath}.
+ */
+@Slf4j
+@Component
+public class InventoryRecordCachePersistence {
+    private final InventoryRecordCache cache;
+    private final InventoryManagerProperties.CacheProperties properties;
+    private ScheduledExecutorService executor;
+
+    public InventoryRecordCachePersistence(InventoryRecordCache cache, InventoryManagerProperties properties) {
+        this.cache = cache;
+        this.properties = properties.getCache();
+    }
+
+    @PostConstruct
+    void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        load();
+
+        var interval = properties.getSnapshotInterval().toMillis();
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(this::snapshot, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            // Take a last snapshot so that the next start is as warm as possible
+            snapshot();
+        }
+    }
+
+    /**
+     * Reloads the records in the snapshot that are not older than the configured maximum age.
+     */
+    void load() {
+        var path = Path.of(properties.getSnapshotPath());
+        if (!Files.exists(path)) {
+            log.info("No inventory record snapshot at {}, starting with an empty cache", path);
+            return;
+        }
+        try {
+            var start = System.nanoTime();
+            var notBefore = System.currentTimeMillis() - properties.getSnapshotMaxAge().toMillis();
+            var records = InventoryRecordSnapshot.read(path, notBefore);
+            records.forEach(cache::restore);
+            log.info("Restored {} inventory records from {} in {} ms", records.size(), path,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            log.warn("Could not restore inventory records from {}, starting with an empty cache", path, e);
+        }
+    }
+
+    /**
+     * Writes the current content of the cache to the snapshot file.
+     */
+    void snapshot() {
+        var path = Path.of(properties.getSnapshotPath());
+        try {
+            var written = InventoryRecordSnapshot.write(path, cache.entries());
+            log.debug("Snapshotted {} inventory records to {}", written, path);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not snapshot inventory records to {}", path, e);
+        }
+    }
+
+    private boolean isEnabled() {
+        return properties.getSnapshotPath() != null && !properties.getSnapshotPath().isBlank();
+    }
+}
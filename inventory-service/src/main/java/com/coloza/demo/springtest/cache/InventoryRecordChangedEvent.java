@@ -0,0 +1,11 @@
+package com.coloza.demo.springtest.cache;
+
+import com.coloza.demo.springtest.model.InventoryRecord;
+
+/**
+ * Published when the Inventory Manager reports a record that differs from the one we last saw for the product.
+ *
+ * @param record The new record.
+ */
+public record InventoryRecordChangedEvent(InventoryRecord record) {
+}
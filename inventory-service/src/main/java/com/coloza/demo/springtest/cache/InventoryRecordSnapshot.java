@@ -0,0 +1,127 @@
+package com.coloza.demo.springtest.cache;
+
+import com.coloza.demo.springtest.model.InventoryRecord;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads and writes the compact binary snapshot of the {@link InventoryRecordCache}.
+ * <p>
+ * Layout: a header of magic number (int), format version (short) and record count (int), followed by one entry per
+ * record: productId (int), quantity (int, {@link #NULL_QUANTITY} for none), fetchedAt (long, epoch millis),
+ * productName and productCategory (each a short byte length, -1 for null, then UTF-8 bytes).
+ */
+final class InventoryRecordSnapshot {
+    static final int MAGIC = 0x494E5652;
+    static final short VERSION = 1;
+    private static final int NULL_QUANTITY = Integer.MIN_VALUE;
+
+    private InventoryRecordSnapshot() {
+    }
+
+    /**
+     * Writes the specified records to a temporary file next to {@code path} and atomically moves it into place, so
+     * that a crash during the write never leaves a truncated snapshot behind.
+     *
+     * @param path    The snapshot file.
+     * @param records The records to write.
+     * @return The number of records written.
+     * @throws IOException If the snapshot could not be written.
+     */
+    static int write(Path path, Collection<InventoryRecordCache.CachedRecord> records) throws IOException {
+        var entries = List.copyOf(records);
+        var directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        var temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(entries.size());
+                for (var entry : entries) {
+                    var record = entry.record();
+                    out.writeInt(record.getProductId());
+                    out.writeInt(record.getQuantity() == null ? NULL_QUANTITY : record.getQuantity());
+                    out.writeLong(entry.fetchedAt());
+                    writeString(out, record.getProductName());
+                    writeString(out, record.getProductCategory());
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return entries.size();
+    }
+
+    /**
+     * Reads the snapshot through a memory mapping, skipping records received before {@code notBefore}.
+     *
+     * @param path      The snapshot file.
+     * @param notBefore The oldest acceptable receive time, in epoch millis.
+     * @return The records that are recent enough.
+     * @throws IOException If the file cannot be read or is not a valid snapshot.
+     */
+    static List<InventoryRecordCache.CachedRecord> read(Path path, long notBefore) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                    throw new IOException("Not an inventory record snapshot: " + path);
+                }
+                var count = buffer.getInt();
+                var records = new ArrayList<InventoryRecordCache.CachedRecord>(Math.max(0, Math.min(count, 1 << 16)));
+                for (int i = 0; i < count; i++) {
+                    var productId = buffer.getInt();
+                    var quantity = buffer.getInt();
+                    var fetchedAt = buffer.getLong();
+                    var productName = readString(buffer);
+                    var productCategory = readString(buffer);
+                    if (fetchedAt >= notBefore) {
+                        records.add(new InventoryRecordCache.CachedRecord(new InventoryRecord(productId,
+                                quantity == NULL_QUANTITY ? null : quantity, productName, productCategory), fetchedAt));
+                    }
+                }
+                return records;
+            } catch (RuntimeException e) {
+                // BufferUnderflowException and friends: the file is truncated or corrupt
+                throw new IOException("Corrupt inventory record snapshot: " + path, e);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IOException("String too long for the snapshot: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
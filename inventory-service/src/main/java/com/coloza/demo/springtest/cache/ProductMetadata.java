@@ -0,0 +1,11 @@
+package com.coloza.demo.springtest.cache;
+
+/**
+ * The descriptive part of an inventory record, which almost never changes.
+ *
+ * @param productName     The product name.
+ * @param productCategory The product category.
+ * @param fetchedAt       When it was received from the Inventory Manager, in epoch millis.
+ */
+public record ProductMetadata(String productName, String productCategory, long fetchedAt) {
+}
@@ -0,0 +1,89 @@
+package com.coloza.demo.springtest.cache;
+
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.coloza.demo.springtest.model.InventoryRecord;
+import com.coloza.demo.springtest.model.StockLevel;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the name and category of every product for a long time, so that stock refreshes only have to read the
+ * quantity. Names and categories are deduplicated: all records of a category share one string, wherever they are
+ * held. Enabled by setting {@code inventoryManager.metadata.enabled}.
+ */
+@Component
+public class ProductMetadataCache {
+    private final InventoryManagerProperties.MetadataProperties properties;
+    private final ConcurrentMap<Integer, ProductMetadata> metadata = new ConcurrentHashMap<>();
+
+    // Bounded by the product catalogue, like the metadata itself
+    private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+
+    public ProductMetadataCache(InventoryManagerProperties properties) {
+        this.properties = properties.getMetadata();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Returns the metadata of the specified product if it is not older than the configured time to live.
+     *
+     * @param productId The product ID.
+     * @return The metadata, if enabled, known and fresh enough.
+     */
+    public Optional<ProductMetadata> getIfFresh(Integer productId) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        var cutoff = System.currentTimeMillis() - properties.getTtl().toMillis();
+        return Optional.ofNullable(metadata.get(productId))
+                .filter(cached -> cached.fetchedAt() >= cutoff);
+    }
+
+    /**
+     * Stores the metadata of a full record received from the Inventory Manager and replaces the record's strings
+     * with their shared instances.
+     *
+     * @param record The record.
+     * @return The same record.
+     */
+    public InventoryRecord remember(InventoryRecord record) {
+        record.setProductName(dedupe(record.getProductName()));
+        record.setProductCategory(dedupe(record.getProductCategory()));
+        if (properties.isEnabled()) {
+            metadata.put(record.getProductId(), new ProductMetadata(record.getProductName(),
+                    record.getProductCategory(), System.currentTimeMillis()));
+        }
+        return record;
+    }
+
+    /**
+     * Builds a full record from a stock level and the product's cached metadata.
+     *
+     * @param productId  The product ID.
+     * @param stockLevel The stock level received from the Inventory Manager.
+     * @param metadata   The cached metadata of the product.
+     * @return The record.
+     */
+    public InventoryRecord enrich(Integer productId, StockLevel stockLevel, ProductMetadata metadata) {
+        return new InventoryRecord(productId, stockLevel.getQuantity(), metadata.productName(),
+                metadata.productCategory());
+    }
+
+    public String getStockPath() {
+        return properties.getStockPath();
+    }
+
+    public int size() {
+        return metadata.size();
+    }
+
+    private String dedupe(String value) {
+        return value == null ? null : strings.computeIfAbsent(value, key -> key);
+    }
+}
@@ -0,0 +1,328 @@
+package com.coloza.demo.springtest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings for talking to the Inventory Manager service, bound from the {@code inventoryManager.*} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "inventory-manager")
+public class InventoryManagerProperties {
+    /**
+     * The base URL of the Inventory Manager, e.g. http://somehost/inventory.
+     */
+    private String baseUrl;
+
+    /**
+     * The base URLs of several Inventory Manager nodes to balance requests across. When empty, only
+     * {@code baseUrl} is used.
+     */
+    private List<String> baseUrls = new ArrayList<>();
+
+    /**
+     * How long to wait for a connection to the Inventory Manager.
+     */
+    private Duration connectTimeout = Duration.ofSeconds(2);
+
+    /**
+     * How long to wait for the Inventory Manager to respond once connected.
+     */
+    private Duration readTimeout = Duration.ofSeconds(5);
+
+    /**
+     * The HTTP version used to call the Inventory Manager. With HTTP_2 concurrent calls share one multiplexed
+     * connection per node instead of needing one connection each; plain http URLs are upgraded to h2c, https URLs
+     * negotiate HTTP/2 through ALPN, and a node that supports neither is still called over HTTP/1.1.
+     */
+    private HttpClient.Version httpVersion = HttpClient.Version.HTTP_1_1;
+
+    /**
+     * Whether reads may be answered from the last known record when the Inventory Manager is unavailable.
+     */
+    private boolean fallbackToCache = true;
+
+    private final CircuitBreakerProperties circuitBreaker = new CircuitBreakerProperties();
+
+    private final BulkheadProperties bulkhead = new BulkheadProperties();
+
+    private final HedgingProperties hedging = new HedgingProperties();
+
+    private final LoadBalancingProperties loadBalancing = new LoadBalancingProperties();
+
+    private final StreamProperties stream = new StreamProperties();
+
+    private final CacheProperties cache = new CacheProperties();
+
+    private final ReservationProperties reservations = new ReservationProperties();
+
+    private final BulkProperties bulk = new BulkProperties();
+
+    private final MetricsProperties metrics = new MetricsProperties();
+
+    private final MetadataProperties metadata = new MetadataProperties();
+
+    /**
+     * Returns every Inventory Manager base URL that requests may be sent to.
+     *
+     * @return The configured base URLs, or just the single base URL.
+     */
+    public List<String> getEndpoints() {
+        return baseUrls.isEmpty() ? List.of(baseUrl) : baseUrls;
+    }
+
+    @Data
+    public static class CircuitBreakerProperties {
+        /**
+         * The number of most recent calls used to compute the failure rate.
+         */
+        private int slidingWindowSize = 20;
+
+        /**
+         * The number of calls that must be recorded before the failure rate is evaluated.
+         */
+        private int minimumCalls = 10;
+
+        /**
+         * The failure rate, in percent, at or above which the breaker opens.
+         */
+        private int failureRateThreshold = 50;
+
+        /**
+         * How long the breaker stays open before letting trial calls through.
+         */
+        private Duration openDuration = Duration.ofSeconds(10);
+
+        /**
+         * The number of trial calls that must succeed in the half-open state to close the breaker again.
+         */
+        private int halfOpenCalls = 3;
+    }
+
+    @Data
+    public static class BulkheadProperties {
+        /**
+         * The maximum number of concurrent upstream calls per operation.
+         */
+        private int maxConcurrentCalls = 25;
+
+        /**
+         * How long a caller may wait for a free slot before being rejected.
+         */
+        private Duration maxWait = Duration.ZERO;
+    }
+
+    @Data
+    public static class HedgingProperties {
+        /**
+         * Whether a second, identical GET may be sent when the first one is slow. Never applies to purchases.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The latency percentile of recent GETs after which the hedged request is sent.
+         */
+        private double percentile = 95;
+
+        /**
+         * The hedge delay used until enough latencies have been observed to compute the percentile.
+         */
+        private Duration initialDelay = Duration.ofMillis(100);
+
+        /**
+         * The lower bound for the hedge delay, so that a very fast upstream does not cause constant hedging.
+         */
+        private Duration minDelay = Duration.ofMillis(10);
+
+        /**
+         * The maximum extra load hedging may add, as a percentage of primary requests.
+         */
+        private int budgetPercent = 10;
+    }
+
+    @Data
+    public static class LoadBalancingProperties {
+        public enum Strategy {
+            /**
+             * Pick the node with the fewest requests in flight.
+             */
+            LEAST_OUTSTANDING,
+
+            /**
+             * Pick the node with the lowest exponentially weighted moving average latency, weighted by the number of
+             * requests in flight.
+             */
+            EWMA
+        }
+
+        private Strategy strategy = Strategy.LEAST_OUTSTANDING;
+
+        /**
+         * Whether to route each productId to the same node, so that the Inventory Manager's own caches stay warm.
+         * Falls back to the next node on the hash ring while the preferred one is ejected.
+         */
+        private boolean consistentHashing = false;
+
+        /**
+         * The number of consecutive failures after which a node is ejected.
+         */
+        private int ejectAfterFailures = 5;
+
+        /**
+         * How long an ejected node is left alone before a single probe request is sent to it.
+         */
+        private Duration ejectionDuration = Duration.ofSeconds(10);
+
+        /**
+         * How quickly the latency average follows new samples, between 0 and 1.
+         */
+        private double ewmaDecay = 0.3;
+    }
+
+    @Data
+    public static class StreamProperties {
+        /**
+         * How often each streamed product is refreshed from the Inventory Manager, however many clients watch it.
+         */
+        private Duration pollInterval = Duration.ofSeconds(1);
+
+        /**
+         * How long a stream stays open before the client has to reconnect.
+         */
+        private Duration timeout = Duration.ofMinutes(30);
+
+        /**
+         * The number of threads that poll the Inventory Manager and push updates to clients.
+         */
+        private int threads = 4;
+
+        /**
+         * The most products one stream may watch. Each watched product may start its own poller, so this bounds the
+         * upstream load a single client can cause.
+         */
+        private int maxProducts = 50;
+    }
+
+    @Data
+    public static class CacheProperties {
+        /**
+         * How long a cached record may be used to answer reads without asking the Inventory Manager. Zero means
+         * every read goes upstream and the cache is only used as a fallback.
+         */
+        private Duration ttl = Duration.ZERO;
+
+        /**
+         * The file the cache is snapshotted to and reloaded from at startup. Persistence is disabled when unset.
+         */
+        private String snapshotPath;
+
+        /**
+         * How often the cache is snapshotted.
+         */
+        private Duration snapshotInterval = Duration.ofSeconds(30);
+
+        /**
+         * Records older than this are not reloaded from the snapshot.
+         */
+        private Duration snapshotMaxAge = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class ReservationProperties {
+        /**
+         * Whether purchases may be granted locally against an allotment of stock and reconciled with the Inventory
+         * Manager later.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The append-only ledger in which local reservations are recorded until they are reconciled.
+         */
+        private String ledgerPath = Path.of(System.getProperty("java.io.tmpdir"), "inventory-reservations.ledger")
+                .toString();
+
+        /**
+         * Whether every ledger write is forced to disk. Without it, reservations survive a process crash but not a
+         * machine crash.
+         */
+        private boolean fsync = false;
+
+        /**
+         * The share of a product's upstream stock this node may sell before reconciling. Across all nodes the shares
+         * must not add up to more than 1, or stock can be oversold.
+         */
+        private double allotmentFraction = 0.1;
+
+        /**
+         * The most units of a product this node may hold at once.
+         */
+        private int maxAllotment = 100;
+
+        /**
+         * How often pending reservations are sent to the Inventory Manager.
+         */
+        private Duration reconcileInterval = Duration.ofSeconds(1);
+
+        /**
+         * The most reservations reconciled in one round.
+         */
+        private int batchSize = 500;
+    }
+
+    @Data
+    public static class BulkProperties {
+        /**
+         * The most items of one bulk purchase sent to the Inventory Manager at the same time. Keep it below the
+         * bulkhead's limit so that a large order does not crowd out single purchases.
+         */
+        private int parallelism = 8;
+
+        /**
+         * The most items accepted in one bulk purchase.
+         */
+        private int maxItems = 500;
+    }
+
+    @Data
+    public static class MetricsProperties {
+        /**
+         * The latency percentiles published for every upstream operation.
+         */
+        private List<Double> percentiles = List.of(0.5, 0.95, 0.99);
+
+        /**
+         * Whether histogram buckets are published as well, so that percentiles can be aggregated across nodes.
+         */
+        private boolean percentileHistogram = false;
+
+        /**
+         * Calls to the Inventory Manager slower than this are logged.
+         */
+        private Duration slowCallThreshold = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class MetadataProperties {
+        /**
+         * Whether product names and categories are cached, so that stock refreshes only read the quantity.
+         */
+        private boolean enabled = false;
+
+        /**
+         * How long cached names and categories are trusted before a full record is fetched again.
+         */
+        private Duration ttl = Duration.ofHours(1);
+
+        /**
+         * The path, relative to a product's record, of a stock-only resource on the Inventory Manager, e.g.
+         * {@code /stock}. When empty, stock refreshes fetch the full record and only read its quantity.
+         */
+        private String stockPath = "";
+    }
+}
@@ -0,0 +1,17 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The load and health of one Inventory Manager node as seen by this service.
+ */
+@Data
+@AllArgsConstructor
+public class EndpointStatus {
+    private String baseUrl;
+    private Integer outstandingRequests;
+    private Double ewmaLatencyMillis;
+    private Integer consecutiveFailures;
+    private Boolean ejected;
+}
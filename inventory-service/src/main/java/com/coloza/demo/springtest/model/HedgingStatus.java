@@ -0,0 +1,18 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Counters describing how often GETs to the Inventory Manager were hedged.
+ */
+@Data
+@AllArgsConstructor
+public class HedgingStatus {
+    private Boolean enabled;
+    private Long currentDelayMillis;
+    private Long primaryRequests;
+    private Long hedgedRequests;
+    private Long hedgesWon;
+    private Long hedgesDeniedByBudget;
+}
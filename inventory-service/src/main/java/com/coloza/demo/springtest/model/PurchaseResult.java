@@ -0,0 +1,18 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The outcome of one item of a bulk purchase. The status is the one the single-item endpoint would have answered
+ * with, and the inventory record is only present when the purchase succeeded.
+ */
+@Data
+@AllArgsConstructor
+public class PurchaseResult {
+    private Integer productId;
+    private Integer quantityPurchased;
+    private Integer status;
+    private InventoryRecord inventoryRecord;
+    private String error;
+}
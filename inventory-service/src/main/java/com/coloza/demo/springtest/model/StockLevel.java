@@ -0,0 +1,17 @@
+package com.coloza.demo.springtest.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The stock-only view of an inventory record. The product name and category in the response are skipped rather than
+ * turned into strings.
+ */
+@Data
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class StockLevel {
+    private Integer productId;
+    private Integer quantity;
+}
@@ -0,0 +1,18 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A snapshot of the circuit breaker and bulkhead guarding one Inventory Manager operation.
+ */
+@Data
+@AllArgsConstructor
+public class UpstreamStatus {
+    private String operation;
+    private String circuitBreakerState;
+    private Float failureRate;
+    private Long rejectedByCircuitBreaker;
+    private Integer availableBulkheadPermits;
+    private Long rejectedByBulkhead;
+}
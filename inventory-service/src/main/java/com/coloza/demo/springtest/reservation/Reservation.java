@@ -0,0 +1,12 @@
+package com.coloza.demo.springtest.reservation;
+
+/**
+ * A purchase granted locally that has not yet been reconciled with the Inventory Manager.
+ *
+ * @param sequence   The position of the reservation in the ledger.
+ * @param productId  The product that was purchased.
+ * @param quantity   The quantity purchased.
+ * @param reservedAt The time of the purchase, in epoch millis.
+ */
+public record Reservation(long sequence, int productId, int quantity, long reservedAt) {
+}
@@ -0,0 +1,190 @@
+package com.coloza.demo.springtest.reservation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only file of local reservations and their reconciliation outcomes, one line per event:
+ * <pre>
+ * R &lt;sequence&gt; &lt;productId&gt; &lt;quantity&gt; &lt;reservedAt&gt;   a reservation was granted
+ * C &lt;sequence&gt;                                       it was confirmed by the Inventory Manager
+ * X &lt;sequence&gt;                                       it was rejected by the Inventory Manager
+ * </pre>
+ * Replaying the file at startup yields the reservations that still have to be reconciled. Once nothing is pending the
+ * file is truncated, so it never grows beyond the reservations of a few reconcile rounds.
+ */
+@Slf4j
+public class ReservationLedger implements AutoCloseable {
+    /**
+     * The size above which a fully reconciled ledger is truncated.
+     */
+    private static final long COMPACT_THRESHOLD_BYTES = 1024 * 1024;
+
+    private final Path path;
+    private final boolean fsync;
+    private final FileChannel channel;
+    private final Map<Long, Reservation> pending = new LinkedHashMap<>();
+    private long nextSequence = 1;
+
+    public ReservationLedger(Path path, boolean fsync) throws IOException {
+        this.path = path;
+        this.fsync = fsync;
+        var directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        replay();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (endsWithTornLine()) {
+            // Terminate it, so that the next event does not get glued onto it
+            writeRaw("\n");
+        }
+    }
+
+    /**
+     * Records a new reservation.
+     *
+     * @param productId The product purchased.
+     * @param quantity  The quantity purchased.
+     * @return The recorded reservation.
+     * @throws IOException If the reservation could not be written, in which case it must not be granted.
+     */
+    public synchronized Reservation append(int productId, int quantity) throws IOException {
+        var reservation = new Reservation(nextSequence, productId, quantity, System.currentTimeMillis());
+        write("R " + reservation.sequence() + " " + productId + " " + quantity + " " + reservation.reservedAt());
+        nextSequence++;
+        pending.put(reservation.sequence(), reservation);
+        return reservation;
+    }
+
+    /**
+     * Records that the specified reservations were accepted by the Inventory Manager.
+     *
+     * @param reservations The reconciled reservations.
+     * @throws IOException If the outcome could not be written.
+     */
+    public synchronized void confirm(Collection<Reservation> reservations) throws IOException {
+        settle("C", reservations);
+    }
+
+    /**
+     * Records that the Inventory Manager refused the specified reservations, so they will not be retried.
+     *
+     * @param reservations The refused reservations.
+     * @throws IOException If the outcome could not be written.
+     */
+    public synchronized void reject(Collection<Reservation> reservations) throws IOException {
+        settle("X", reservations);
+    }
+
+    /**
+     * Returns the oldest reservations that still have to be reconciled.
+     *
+     * @param limit The maximum number of reservations to return.
+     * @return The pending reservations in ledger order.
+     */
+    public synchronized List<Reservation> pending(int limit) {
+        return pending.values().stream().limit(limit).toList();
+    }
+
+    public synchronized List<Reservation> pending() {
+        return List.copyOf(pending.values());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void settle(String outcome, Collection<Reservation> reservations) throws IOException {
+        if (reservations.isEmpty()) {
+            return;
+        }
+        var lines = new StringBuilder();
+        for (var reservation : reservations) {
+            lines.append(outcome).append(' ').append(reservation.sequence()).append('\n');
+        }
+        // Forget them first, so that a failed write cannot make them go upstream twice within this run
+        reservations.forEach(reservation -> pending.remove(reservation.sequence()));
+        writeRaw(lines.toString());
+
+        if (pending.isEmpty() && channel.size() > COMPACT_THRESHOLD_BYTES) {
+            // Everything is reconciled, so the history can go
+            channel.truncate(0);
+            log.info("Compacted reservation ledger {}", path);
+        }
+    }
+
+    private void write(String line) throws IOException {
+        writeRaw(line + "\n");
+    }
+
+    private void writeRaw(String text) throws IOException {
+        var buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private boolean endsWithTornLine() throws IOException {
+        var size = channel.size();
+        if (size == 0) {
+            return false;
+        }
+        try (var reader = FileChannel.open(path, StandardOpenOption.READ)) {
+            var last = ByteBuffer.allocate(1);
+            reader.read(last, size - 1);
+            return last.get(0) != '\n';
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        var reservations = new LinkedHashMap<Long, Reservation>();
+        var lineNumber = 0;
+        try (var lines = Files.lines(path, StandardCharsets.US_ASCII)) {
+            for (var line : (Iterable<String>) lines::iterator) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                var fields = line.split(" ");
+                try {
+                    var sequence = Long.parseLong(fields[1]);
+                    switch (fields[0]) {
+                        case "R" -> reservations.put(sequence, new Reservation(sequence,
+                                Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Long.parseLong(fields[4])));
+                        case "C", "X" -> reservations.remove(sequence);
+                        default -> throw new IllegalArgumentException("Unknown event " + fields[0]);
+                    }
+                    nextSequence = Math.max(nextSequence, sequence + 1);
+                } catch (RuntimeException e) {
+                    // Most likely a line torn by a crash mid-write; everything before it is intact
+                    log.warn("Ignoring unreadable line {} of reservation ledger {}: {}", lineNumber, path, line);
+                }
+            }
+        }
+        pending.putAll(reservations);
+        if (!pending.isEmpty()) {
+            log.info("Replayed {} unreconciled reservations from {}", pending.size(), path);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.coloza.demo.springtest.reservation;
+
+import com.coloza.demo.springtest.cache.InventoryRecordCache;
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.coloza.demo.springtest.model.InventoryRecord;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Grants purchases locally against a per-product allotment of stock, records them in a {@link ReservationLedger} and
+ * reconciles them with the Inventory Manager in batches, so that a purchase does not have to wait for the upstream
+ * round trip. A purchase the allotment cannot cover is left to the caller, which sends it upstream synchronously.
+ * <p>
+ * The Inventory Manager has no lease API, so the allotment is a configured share of the first upstream stock this node
+ * observes for the product, and is fixed from then on: reconciled purchases are deducted from it instead of a new
+ * share being taken from a later record, since later upstream quantities still count units other nodes have sold but
+ * not reconciled yet. As long as the shares of all nodes add up to at most 1, reservations cannot oversell stock;
+ * purchases sent upstream synchronously draw on the same stock and can still make a reconciliation fail. Once the
+ * Inventory Manager refuses a reconciliation the product's allotment is closed, and its purchases go upstream.
+ * Reconciliation is at-least-once: a crash between the upstream purchase and the ledger write replays the
+ * reservation.
+ * Enabled by setting {@code inventoryManager.reservations.enabled}.
+ */
+@Slf4j
+@Component
+public class StockReservationService {
+    private final InventoryRecordCache cache;
+    private final InventoryManagerProperties.ReservationProperties properties;
+    private final ConcurrentMap<Integer, Allotment> allotments = new ConcurrentHashMap<>();
+    private ReservationLedger ledger;
+    private ScheduledExecutorService executor;
+    private volatile BiFunction<Integer, Integer, Optional<InventoryRecord>> reconciler;
+
+    public StockReservationService(InventoryRecordCache cache, InventoryManagerProperties properties) {
+        this.cache = cache;
+        this.properties = properties.getReservations();
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        ledger = new ReservationLedger(Path.of(properties.getLedgerPath()), properties.isFsync());
+
+        var interval = properties.getReconcileInterval().toMillis();
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(this::reconcile, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever is still pending stays in the ledger and is reconciled after the next start
+        ledger.close();
+    }
+
+    /**
+     * Sets the function that purchases the specified quantity of a product from the Inventory Manager. Pending
+     * reservations are not reconciled until it is set.
+     *
+     * @param reconciler The upstream purchase, returning an empty Optional if the Inventory Manager refused it.
+     */
+    public void setReconciler(BiFunction<Integer, Integer, Optional<InventoryRecord>> reconciler) {
+        this.reconciler = reconciler;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Grants the specified purchase locally if the product's allotment covers it.
+     *
+     * @param productId The product to purchase.
+     * @param quantity  The quantity to purchase.
+     * @return The expected inventory record after the purchase, or an empty Optional if the purchase must go to the
+     * Inventory Manager.
+     */
+    public Optional<InventoryRecord> tryReserve(Integer productId, Integer quantity) {
+        if (!properties.isEnabled() || quantity == null || quantity <= 0) {
+            return Optional.empty();
+        }
+        // Stock can only be allotted from a record we have seen
+        var known = cache.get(productId);
+        if (known.isEmpty()) {
+            return Optional.empty();
+        }
+
+        var allotment = allotment(productId, known);
+        synchronized (allotment) {
+            if (allotment.available() < quantity) {
+                return Optional.empty();
+            }
+            try {
+                ledger.append(productId, quantity);
+            } catch (IOException e) {
+                log.warn("Could not record reservation for product id: {}, purchasing upstream", productId, e);
+                return Optional.empty();
+            }
+            allotment.used += quantity;
+
+            // A record from the Inventory Manager does not count the reservations not reconciled yet, while the
+            // record of the previous reservation does
+            var record = cache.get(productId).orElse(known.get());
+            var unreconciled = record == allotment.published ? quantity : allotment.used;
+            var expected = new InventoryRecord(productId, record.getQuantity() - unreconciled,
+                    record.getProductName(), record.getProductCategory());
+            // Readers and stream subscribers see the sale before it is reconciled
+            allotment.published = expected;
+            cache.put(expected);
+            return Optional.of(expected);
+        }
+    }
+
+    /**
+     * Returns the reservations that have not been reconciled yet.
+     */
+    public List<Reservation> getPendingReservations() {
+        return ledger == null ? List.of() : ledger.pending();
+    }
+
+    /**
+     * Sends the oldest pending reservations to the Inventory Manager, one summed purchase per product.
+     */
+    void reconcile() {
+        var upstream = reconciler;
+        if (upstream == null) {
+            return;
+        }
+        var byProduct = ledger.pending(properties.getBatchSize()).stream()
+                .collect(Collectors.groupingBy(Reservation::productId, LinkedHashMap::new, Collectors.toList()));
+
+        byProduct.forEach((productId, reservations) -> {
+            var quantity = reservations.stream().mapToInt(Reservation::quantity).sum();
+            Optional<InventoryRecord> result;
+            try {
+                result = upstream.apply(productId, quantity);
+            } catch (RuntimeException e) {
+                log.warn("Could not reconcile {} reservations for product id: {}, will retry: {}",
+                        reservations.size(), productId, e.getMessage());
+                return;
+            }
+
+            try {
+                if (result.isPresent()) {
+                    settle(productId, quantity, true);
+                    ledger.confirm(reservations);
+                } else {
+                    log.error("Inventory manager refused {} reserved units of product id: {}", quantity, productId);
+                    // The share we were working from is wrong, so stop selling from it
+                    settle(productId, quantity, false);
+                    ledger.reject(reservations);
+                }
+            } catch (IOException e) {
+                // The outcome is settled in memory, but a restart would replay these reservations
+                log.error("Could not record reconciliation of product id: {} in the ledger", productId, e);
+            }
+        });
+    }
+
+    private void settle(int productId, int quantity, boolean accepted) {
+        // Reservations replayed from the ledger may settle before this run allots anything for the product. The
+        // allotment is created now, while they are still pending, so that it counts them as used before they settle.
+        var allotment = allotment(productId, cache.get(productId));
+        synchronized (allotment) {
+            allotment.used -= quantity;
+            if (accepted) {
+                allotment.sold += quantity;
+            } else {
+                allotment.granted = allotment.sold + allotment.used;
+            }
+        }
+    }
+
+    /**
+     * Returns the allotment of the specified product, creating it from the specified record. The allotment is never
+     * replaced or removed, so every reservation and settlement changes the same one. A new allotment counts the
+     * reservations pending in the ledger as used.
+     */
+    private Allotment allotment(int productId, Optional<InventoryRecord> record) {
+        return allotments.computeIfAbsent(productId, id -> new Allotment(record.map(this::lease).orElse(0),
+                pendingQuantity(id)));
+    }
+
+    private int lease(InventoryRecord record) {
+        var share = (int) Math.floor(record.getQuantity() * properties.getAllotmentFraction());
+        return Math.max(0, Math.min(properties.getMaxAllotment(), share));
+    }
+
+    private int pendingQuantity(int productId) {
+        return ledger.pending().stream()
+                .filter(reservation -> reservation.productId() == productId)
+                .mapToInt(Reservation::quantity)
+                .sum();
+    }
+
+    /**
+     * The units of a product this node may sell, how many of them are sold but not yet reconciled, and how many are
+     * sold and reconciled, along with the record of the latest sale. Guarded by itself.
+     */
+    private static final class Allotment {
+        private int granted;
+        private int used;
+        private int sold;
+        private InventoryRecord published;
+
+        private Allotment(int granted, int used) {
+            this.granted = granted;
+            this.used = used;
+        }
+
+        private int available() {
+            return granted - sold - used;
+        }
+    }
+}
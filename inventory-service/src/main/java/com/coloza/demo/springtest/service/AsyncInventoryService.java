@@ -0,0 +1,16 @@
+package com.coloza.demo.springtest.service;
+
+import com.coloza.demo.springtest.model.InventoryRecord;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A non-blocking variant of {@link InventoryService}: no thread is held while waiting on the Inventory Manager.
+ */
+public interface AsyncInventoryService {
+
+    CompletableFuture<Optional<InventoryRecord>> getInventoryRecord(Integer productId);
+
+    CompletableFuture<Optional<InventoryRecord>> purchaseProduct(Integer productId, Integer quantity);
+}
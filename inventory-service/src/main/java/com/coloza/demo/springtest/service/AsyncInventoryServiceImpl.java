@@ -0,0 +1,184 @@
+package com.coloza.demo.springtest.service;
+
+import com.coloza.demo.springtest.cache.InventoryRecordCache;
+import com.coloza.demo.springtest.cache.ProductMetadata;
+import com.coloza.demo.springtest.cache.ProductMetadataCache;
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.coloza.demo.springtest.model.InventoryRecord;
+import com.coloza.demo.springtest.model.PurchaseRecord;
+import com.coloza.demo.springtest.model.StockLevel;
+import com.coloza.demo.springtest.reservation.StockReservationService;
+import com.coloza.demo.springtest.upstream.SingleFlight;
+import com.coloza.demo.springtest.upstream.UpstreamLoadBalancer;
+import com.coloza.demo.springtest.upstream.UpstreamMetrics;
+import com.coloza.demo.springtest.upstream.UpstreamOperation;
+import com.coloza.demo.springtest.upstream.UpstreamResilience;
+import com.coloza.demo.springtest.upstream.UpstreamUnavailableException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Talks to the Inventory Manager through the JDK's non-blocking {@link HttpClient}. It shares the circuit breakers,
+ * bulkheads and record cache with {@link InventoryServiceImpl}, so both paths see the same upstream health.
+ */
+@Slf4j
+@Service
+public class AsyncInventoryServiceImpl implements AsyncInventoryService {
+
+    private final InventoryManagerProperties properties;
+    private final UpstreamResilience resilience;
+    private final UpstreamLoadBalancer loadBalancer;
+    private final InventoryRecordCache cache;
+    private final StockReservationService reservations;
+    private final ObjectMapper objectMapper;
+    private final UpstreamMetrics metrics;
+    private final ProductMetadataCache metadataCache;
+    private final HttpClient httpClient;
+    private final SingleFlight<Integer, Optional<InventoryRecord>> inFlight;
+
+    public AsyncInventoryServiceImpl(InventoryManagerProperties properties, UpstreamResilience resilience,
+                                     UpstreamLoadBalancer loadBalancer, InventoryRecordCache cache,
+                                     StockReservationService reservations, ObjectMapper objectMapper,
+                                     UpstreamMetrics metrics, ProductMetadataCache metadataCache) {
+        this.properties = properties;
+        this.resilience = resilience;
+        this.loadBalancer = loadBalancer;
+        this.cache = cache;
+        this.reservations = reservations;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.metadataCache = metadataCache;
+        this.inFlight = new SingleFlight<>(() -> metrics.recordCollapsed(UpstreamOperation.GET));
+        this.httpClient = HttpClient.newBuilder()
+                .version(properties.getHttpVersion())
+                .connectTimeout(properties.getConnectTimeout())
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<Optional<InventoryRecord>> getInventoryRecord(Integer productId) {
+        var ttl = properties.getCache().getTtl();
+        if (!ttl.isZero()) {
+            var fresh = cache.getIfFresh(productId, ttl);
+            if (fresh.isPresent()) {
+                return CompletableFuture.completedFuture(fresh);
+            }
+        }
+
+        // Concurrent lookups of the same product share one upstream call
+        return inFlight.executeAsync(productId, () -> {
+                    // When the name and category are cached, only the stock level is read
+                    var metadata = metadataCache.getIfFresh(productId);
+                    var path = "/" + productId + (metadata.isPresent() ? metadataCache.getStockPath() : "");
+                    return resilience.executeAsync(UpstreamOperation.GET, () -> loadBalancer.executeAsync(productId,
+                                    baseUrl -> send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                                            .timeout(properties.getReadTimeout())
+                                            .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                                            .GET()
+                                            .build(), productId, metadata)))
+                            .whenComplete((inventoryRecord, e) -> {
+                                if (e == null) {
+                                    inventoryRecord.ifPresentOrElse(cache::put, () -> cache.evict(productId));
+                                }
+                            });
+                })
+                .exceptionally(e -> fallback(productId, UpstreamResilience.unwrap(e)));
+    }
+
+    @Override
+    public CompletableFuture<Optional<InventoryRecord>> purchaseProduct(Integer productId, Integer quantity) {
+        var reserved = reservations.tryReserve(productId, quantity);
+        if (reserved.isPresent()) {
+            return CompletableFuture.completedFuture(reserved);
+        }
+
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(new PurchaseRecord(productId, quantity));
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return resilience.executeAsync(UpstreamOperation.PURCHASE, () -> loadBalancer.executeAsync(productId, baseUrl ->
+                        send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + productId + "/purchaseRecord"))
+                                .timeout(properties.getReadTimeout())
+                                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                                .build(), productId, Optional.empty())))
+                .whenComplete((inventoryRecord, e) -> {
+                    if (e == null) {
+                        inventoryRecord.ifPresent(cache::put);
+                    }
+                });
+    }
+
+    private CompletableFuture<Optional<InventoryRecord>> send(HttpRequest request, Integer productId,
+                                                             Optional<ProductMetadata> metadata) {
+        var operation = "GET".equals(request.method()) ? UpstreamOperation.GET : UpstreamOperation.PURCHASE;
+        var sentBytes = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+        var start = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, e) -> metrics.record(operation, request.uri(),
+                        response == null ? null : response.statusCode(), System.nanoTime() - start,
+                        Math.max(sentBytes, 0), response == null ? 0 : response.body().length))
+                .thenApply(response -> toInventoryRecord(response, productId, metadata));
+    }
+
+    /**
+     * Maps a response the same way RestTemplate does for the blocking path: a 4xx means there is no record, any
+     * other non-2xx status is a failure.
+     */
+    private Optional<InventoryRecord> toInventoryRecord(HttpResponse<byte[]> response, Integer productId,
+                                                        Optional<ProductMetadata> metadata) {
+        var status = HttpStatusCode.valueOf(response.statusCode());
+        if (status.is4xxClientError()) {
+            return Optional.empty();
+        }
+        if (!status.is2xxSuccessful()) {
+            throw new RestClientException("Inventory manager responded with status " + status.value());
+        }
+        if (response.body().length == 0) {
+            return Optional.empty();
+        }
+        try {
+            if (metadata.isPresent()) {
+                var stockLevel = objectMapper.readValue(response.body(), StockLevel.class);
+                return Optional.of(metadataCache.enrich(productId, stockLevel, metadata.get()));
+            }
+            return Optional.of(metadataCache.remember(objectMapper.readValue(response.body(), InventoryRecord.class)));
+        } catch (IOException e) {
+            throw new RestClientException("Could not read the inventory record", e);
+        }
+    }
+
+    /**
+     * Answers a read from the last known record when the Inventory Manager could not be reached, if enabled.
+     */
+    private Optional<InventoryRecord> fallback(Integer productId, Throwable e) {
+        if (e instanceof UpstreamUnavailableException unavailable && properties.isFallbackToCache()) {
+            var cached = cache.get(productId);
+            if (cached.isPresent()) {
+                log.warn("Serving cached inventory record for product id: {}, {}", productId, unavailable.getMessage());
+                return cached;
+            }
+        }
+        if (e instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        throw new IllegalStateException(e);
+    }
+}
@@ -1,12 +1,33 @@
 package com.coloza.demo.springtest.service;
 
 import com.coloza.demo.springtest.model.InventoryRecord;
+import com.coloza.demo.springtest.model.PurchaseRecord;
+import com.coloza.demo.springtest.model.PurchaseResult;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface InventoryService {
 
     Optional<InventoryRecord> getInventoryRecord(Integer productId);
 
+    /**
+     * Fetches the record of the specified product from the Inventory Manager, even if a fresh one is cached, and
+     * caches it.
+     *
+     * @param productId The product ID.
+     * @return The record, or empty if the Inventory Manager does not know the product.
+     */
+    Optional<InventoryRecord> refreshInventoryRecord(Integer productId);
+
     Optional<InventoryRecord> purchaseProduct(Integer productId, Integer quantity);
+
+    /**
+     * Purchases several products at once. Items are processed in parallel, and one failing item does not fail the
+     * others.
+     *
+     * @param purchaseRecords The purchases to make.
+     * @return One result per purchase, in the same order.
+     */
+    List<PurchaseResult> purchaseProducts(List<PurchaseRecord> purchaseRecords);
 }
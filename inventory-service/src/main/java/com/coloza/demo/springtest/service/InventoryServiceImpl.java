@@ -1,41 +1,238 @@
 package com.coloza.demo.springtest.service;
 
+import com.coloza.demo.springtest.cache.InventoryRecordCache;
+import com.coloza.demo.springtest.cache.ProductMetadata;
+import com.coloza.demo.springtest.cache.ProductMetadataCache;
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
 import com.coloza.demo.springtest.model.InventoryRecord;
 import com.coloza.demo.springtest.model.PurchaseRecord;
-import org.springframework.beans.factory.annotation.Value;
+import com.coloza.demo.springtest.model.PurchaseResult;
+import com.coloza.demo.springtest.model.StockLevel;
+import com.coloza.demo.springtest.reservation.StockReservationService;
+import com.coloza.demo.springtest.upstream.RequestHedging;
+import com.coloza.demo.springtest.upstream.SingleFlight;
+import com.coloza.demo.springtest.upstream.UpstreamLoadBalancer;
+import com.coloza.demo.springtest.upstream.UpstreamMetrics;
+import com.coloza.demo.springtest.upstream.UpstreamMetricsInterceptor;
+import com.coloza.demo.springtest.upstream.UpstreamOperation;
+import com.coloza.demo.springtest.upstream.UpstreamResilience;
+import com.coloza.demo.springtest.upstream.UpstreamUnavailableException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
+@Slf4j
 @Service
 public class InventoryServiceImpl implements InventoryService {
 
-    @Value("${inventoryManager.baseUrl}")
-    private String baseUrl;
+    private final InventoryManagerProperties properties;
+    private final UpstreamResilience resilience;
+    private final RequestHedging hedging;
+    private final UpstreamLoadBalancer loadBalancer;
+    private final InventoryRecordCache cache;
+    private final StockReservationService reservations;
+    private final ProductMetadataCache metadataCache;
+    private final SingleFlight<Integer, Optional<InventoryRecord>> inFlight;
+    private final ExecutorService bulkExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     // Create a RestTemplate to use to communicate with the Inventory Manager Service
-    RestTemplate restTemplate = new RestTemplate();
+    RestTemplate restTemplate;
+
+    public InventoryServiceImpl(InventoryManagerProperties properties, UpstreamResilience resilience,
+                                RequestHedging hedging, UpstreamLoadBalancer loadBalancer,
+                                InventoryRecordCache cache, StockReservationService reservations,
+                                UpstreamMetrics metrics, ProductMetadataCache metadataCache) {
+        this.properties = properties;
+        this.resilience = resilience;
+        this.hedging = hedging;
+        this.loadBalancer = loadBalancer;
+        this.cache = cache;
+        this.reservations = reservations;
+        this.metadataCache = metadataCache;
+        this.inFlight = new SingleFlight<>(() -> metrics.recordCollapsed(UpstreamOperation.GET));
+
+        this.restTemplate = new RestTemplate(createRequestFactory(properties));
+        this.restTemplate.getInterceptors().add(new UpstreamMetricsInterceptor(metrics));
+
+        // Locally granted purchases are settled with the Inventory Manager through the regular purchase path
+        reservations.setReconciler(this::purchaseFromUpstream);
+    }
 
     @Override
     public Optional<InventoryRecord> getInventoryRecord(Integer productId) {
+        var fresh = getFreshFromCache(productId);
+        if (fresh.isPresent()) {
+            return fresh;
+        }
+        return refreshInventoryRecord(productId);
+    }
+
+    @Override
+    public Optional<InventoryRecord> refreshInventoryRecord(Integer productId) {
         try {
-            // Get the inventory record for the specified product ID
-            return Optional.ofNullable(restTemplate.getForObject(baseUrl + "/" + productId, InventoryRecord.class));
-        } catch (HttpClientErrorException e) {
-            // An exception occurred, so return Optional.empty()
-            return Optional.empty();
+            // GETs are idempotent, so a slow one may be hedged with a second request, possibly to another node
+            // Concurrent lookups of the same product share one upstream call
+            return inFlight.execute(productId, () -> {
+                var metadata = metadataCache.getIfFresh(productId);
+                var inventoryRecord = resilience.execute(UpstreamOperation.GET, () -> hedging.execute(() ->
+                        loadBalancer.execute(productId, baseUrl -> fetch(baseUrl, productId, metadata))));
+                inventoryRecord.ifPresentOrElse(cache::put, () -> cache.evict(productId));
+                return inventoryRecord;
+            });
+        } catch (UpstreamUnavailableException e) {
+            return fallback(productId, e);
         }
     }
 
     @Override
     public Optional<InventoryRecord> purchaseProduct(Integer productId, Integer quantity) {
+        var reserved = reservations.tryReserve(productId, quantity);
+        if (reserved.isPresent()) {
+            return reserved;
+        }
+        return purchaseFromUpstream(productId, quantity);
+    }
+
+    @Override
+    public List<PurchaseResult> purchaseProducts(List<PurchaseRecord> purchaseRecords) {
+        // Shared by the items of this order only, so concurrent orders each get their own share of the bulkhead
+        var permits = new Semaphore(properties.getBulk().getParallelism());
+        var results = purchaseRecords.stream()
+                .map(purchaseRecord -> CompletableFuture.supplyAsync(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        return purchase(purchaseRecord);
+                    } finally {
+                        permits.release();
+                    }
+                }, bulkExecutor))
+                .toList();
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        bulkExecutor.shutdownNow();
+    }
+
+    /**
+     * Makes one purchase of a bulk order, turning its failure into a result.
+     */
+    private PurchaseResult purchase(PurchaseRecord purchaseRecord) {
+        var productId = purchaseRecord.getProductId();
+        var quantity = purchaseRecord.getQuantityPurchased();
+        if (productId == null || quantity == null || quantity <= 0) {
+            return new PurchaseResult(productId, quantity, HttpStatus.BAD_REQUEST.value(), null,
+                    "A product id and a positive quantity are required");
+        }
         try {
-            return Optional.ofNullable(restTemplate.postForObject(baseUrl + "/" + productId + "/purchaseRecord",
-                    new PurchaseRecord(productId, quantity), InventoryRecord.class));
+            return purchaseProduct(productId, quantity)
+                    .map(inventoryRecord -> new PurchaseResult(productId, quantity, HttpStatus.OK.value(),
+                            inventoryRecord, null))
+                    .orElseGet(() -> new PurchaseResult(productId, quantity, HttpStatus.NOT_FOUND.value(), null,
+                            "The product could not be purchased"));
+        } catch (UpstreamUnavailableException e) {
+            return new PurchaseResult(productId, quantity, HttpStatus.SERVICE_UNAVAILABLE.value(), null,
+                    e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Purchase of product id: {} failed", productId, e);
+            return new PurchaseResult(productId, quantity, HttpStatus.INTERNAL_SERVER_ERROR.value(), null,
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Purchases the specified quantity from the Inventory Manager.
+     */
+    private Optional<InventoryRecord> purchaseFromUpstream(Integer productId, Integer quantity) {
+        // Purchases are not idempotent and must never be hedged
+        var inventoryRecord = resilience.execute(UpstreamOperation.PURCHASE, () ->
+                loadBalancer.execute(productId, baseUrl -> {
+                    try {
+                        return Optional.ofNullable(restTemplate.postForObject(baseUrl + "/" + productId + "/purchaseRecord",
+                                new PurchaseRecord(productId, quantity), InventoryRecord.class))
+                                .map(metadataCache::remember);
+                    } catch (HttpClientErrorException e) {
+                        return Optional.<InventoryRecord>empty();
+                    }
+                }));
+        inventoryRecord.ifPresent(cache::put);
+        return inventoryRecord;
+    }
+
+    /**
+     * Fetches the record of the specified product from one Inventory Manager node. When its name and category are
+     * cached, only the stock level is read.
+     */
+    private Optional<InventoryRecord> fetch(String baseUrl, Integer productId, Optional<ProductMetadata> metadata) {
+        try {
+            if (metadata.isPresent()) {
+                return Optional.ofNullable(restTemplate.getForObject(
+                                baseUrl + "/" + productId + metadataCache.getStockPath(), StockLevel.class))
+                        .map(stockLevel -> metadataCache.enrich(productId, stockLevel, metadata.get()));
+            }
+            // Get the inventory record for the specified product ID
+            return Optional.ofNullable(restTemplate.getForObject(baseUrl + "/" + productId, InventoryRecord.class))
+                    .map(metadataCache::remember);
         } catch (HttpClientErrorException e) {
+            // An exception occurred, so return Optional.empty()
             return Optional.empty();
         }
     }
+
+    /**
+     * Creates the HTTP client for the configured HTTP version. Never wait on the Inventory Manager indefinitely.
+     */
+    private static ClientHttpRequestFactory createRequestFactory(InventoryManagerProperties properties) {
+        if (properties.getHttpVersion() == HttpClient.Version.HTTP_2) {
+            // The JDK client multiplexes concurrent requests to a node over a single HTTP/2 connection
+            var httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(properties.getConnectTimeout())
+                    .build();
+            var requestFactory = new JdkClientHttpRequestFactory(httpClient);
+            requestFactory.setReadTimeout(properties.getReadTimeout());
+            return requestFactory;
+        }
+        var requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout((int) properties.getConnectTimeout().toMillis());
+        requestFactory.setReadTimeout((int) properties.getReadTimeout().toMillis());
+        return requestFactory;
+    }
+
+    /**
+     * Returns the cached record if it is young enough to be served without asking the Inventory Manager.
+     */
+    private Optional<InventoryRecord> getFreshFromCache(Integer productId) {
+        var ttl = properties.getCache().getTtl();
+        return ttl.isZero() ? Optional.empty() : cache.getIfFresh(productId, ttl);
+    }
+
+    /**
+     * Answers a read from the last known record when the Inventory Manager could not be reached, if enabled.
+     */
+    private Optional<InventoryRecord> fallback(Integer productId, UpstreamUnavailableException e) {
+        if (properties.isFallbackToCache()) {
+            var cached = cache.get(productId);
+            if (cached.isPresent()) {
+                log.warn("Serving cached inventory record for product id: {}, {}", productId, e.getMessage());
+                return cached;
+            }
+        }
+        throw e;
+    }
 }
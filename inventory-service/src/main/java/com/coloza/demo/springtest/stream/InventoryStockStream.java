@@ -0,0 +1,148 @@
+package com.coloza.demo.springtest.stream;
+
+import com.coloza.demo.springtest.cache.InventoryRecordCache;
+import com.coloza.demo.springtest.cache.InventoryRecordChangedEvent;
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.coloza.demo.springtest.model.InventoryRecord;
+import com.coloza.demo.springtest.service.InventoryService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes inventory record changes to Server-Sent Event subscribers.
+ * <p>
+ * Each watched product has a single poller that refreshes it from the Inventory Manager, shared by every subscriber
+ * of that product and stopped when the last one leaves, so a thousand watchers cost one upstream poll. Changes are
+ * picked up from the {@link InventoryRecordCache}, which means a purchase response is pushed as soon as it arrives
+ * rather than on the next poll.
+ */
+@Slf4j
+@Component
+public class InventoryStockStream {
+    private final InventoryService inventoryService;
+    private final InventoryRecordCache cache;
+    private final InventoryManagerProperties.StreamProperties properties;
+    private final ScheduledExecutorService executor;
+
+    private final ConcurrentMap<Integer, ProductSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    public InventoryStockStream(InventoryService inventoryService, InventoryRecordCache cache,
+                                InventoryManagerProperties properties) {
+        this.inventoryService = inventoryService;
+        this.cache = cache;
+        this.properties = properties.getStream();
+        this.executor = Executors.newScheduledThreadPool(this.properties.getThreads());
+    }
+
+    /**
+     * Opens a stream of record changes for the specified products. The current record of each product, if known,
+     * is sent straight away.
+     *
+     * @param productIds The products to watch.
+     * @return The emitter to return from the controller.
+     */
+    public SseEmitter subscribe(Collection<Integer> productIds) {
+        var ids = new LinkedHashSet<>(productIds);
+        var emitter = new SseEmitter(properties.getTimeout().toMillis());
+        emitter.onCompletion(() -> release(emitter, ids));
+        emitter.onTimeout(() -> release(emitter, ids));
+        emitter.onError(e -> release(emitter, ids));
+
+        for (var productId : ids) {
+            subscriptions.compute(productId, (id, subscription) -> {
+                if (subscription == null) {
+                    subscription = new ProductSubscription();
+                    subscription.poller = executor.scheduleWithFixedDelay(() -> poll(id), 0,
+                            properties.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+                }
+                subscription.emitters.add(emitter);
+                return subscription;
+            });
+            cache.get(productId).ifPresent(record -> send(emitter, record));
+        }
+        return emitter;
+    }
+
+    /**
+     * Returns how many streams currently watch the specified product.
+     *
+     * @param productId The product ID.
+     * @return The number of subscribed streams.
+     */
+    public int getSubscriberCount(Integer productId) {
+        var subscription = subscriptions.get(productId);
+        return subscription == null ? 0 : subscription.emitters.size();
+    }
+
+    @EventListener
+    public void onInventoryRecordChanged(InventoryRecordChangedEvent event) {
+        var record = event.record();
+        var subscription = subscriptions.get(record.getProductId());
+        if (subscription != null) {
+            // Fan out on our own threads so the request that caused the change is not held up
+            executor.execute(() -> subscription.emitters.forEach(emitter -> send(emitter, record)));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    void release(SseEmitter emitter, Set<Integer> productIds) {
+        for (var productId : productIds) {
+            subscriptions.computeIfPresent(productId, (id, subscription) -> {
+                subscription.emitters.remove(emitter);
+                if (!subscription.emitters.isEmpty()) {
+                    return subscription;
+                }
+                // The last subscriber has gone, so stop polling
+                subscription.poller.cancel(false);
+                return null;
+            });
+        }
+    }
+
+    private void poll(Integer productId) {
+        try {
+            // A changed record reaches the subscribers through the cache's change event. The fresh cached record is
+            // skipped, or changes would only be picked up once per cache TTL instead of once per poll.
+            inventoryService.refreshInventoryRecord(productId);
+        } catch (RuntimeException e) {
+            log.debug("Could not refresh inventory record for product id: {}, {}", productId, e.getMessage());
+        }
+    }
+
+    private void send(SseEmitter emitter, InventoryRecord record) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("inventory")
+                    .id(Integer.toString(record.getProductId()))
+                    .data(record, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // The client has gone away
+            emitter.completeWithError(e);
+        }
+    }
+
+    private static class ProductSubscription {
+        private final Set<SseEmitter> emitters = new CopyOnWriteArraySet<>();
+        private ScheduledFuture<?> poller;
+    }
+}
@@ -0,0 +1,75 @@
+package com.coloza.demo.springtest.upstream;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of concurrent calls to a dependency so that a slow dependency cannot consume every request thread.
+ */
+public class Bulkhead {
+    @Getter
+    private final String name;
+    @Getter
+    private final int maxConcurrentCalls;
+    private final long maxWaitNanos;
+    private final Semaphore permits;
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    public Bulkhead(String name, int maxConcurrentCalls, Duration maxWait) {
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    /**
+     * Tries to take a slot, waiting at most the configured maximum wait time. A successful acquire must be paired
+     * with a {@link #release()}.
+     *
+     * @return True if a slot was taken, false if the bulkhead is full.
+     */
+    public boolean tryAcquire() {
+        boolean acquired;
+        try {
+            acquired = maxWaitNanos <= 0
+                    ? permits.tryAcquire()
+                    : permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejectedCalls.incrementAndGet();
+        }
+        return acquired;
+    }
+
+    /**
+     * Tries to take a slot without waiting, for callers that must not block.
+     *
+     * @return True if a slot was taken, false if the bulkhead is full.
+     */
+    public boolean tryAcquireImmediately() {
+        var acquired = permits.tryAcquire();
+        if (!acquired) {
+            rejectedCalls.incrementAndGet();
+        }
+        return acquired;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+}
@@ -0,0 +1,152 @@
+package com.coloza.demo.springtest.upstream;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count-based circuit breaker.
+ * <p>
+ * While CLOSED the outcome of the last {@code slidingWindowSize} calls is recorded; once at least
+ * {@code minimumCalls} have been seen and the failure rate reaches {@code failureRateThreshold} percent the breaker
+ * OPENs and rejects every call for {@code openDuration}. It then moves to HALF_OPEN and lets {@code halfOpenCalls}
+ * trial calls through: if they all succeed the breaker closes again, a single failure re-opens it.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    @Getter
+    private final String name;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+
+    /**
+     * Ring buffer of call outcomes, true meaning the call failed.
+     */
+    private final boolean[] outcomes;
+    private int nextOutcome;
+    private int recordedCalls;
+    private int recordedFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    public CircuitBreaker(String name, int slidingWindowSize, int minimumCalls, int failureRateThreshold,
+                          Duration openDuration, int halfOpenCalls) {
+        this.name = name;
+        this.outcomes = new boolean[Math.max(1, slidingWindowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, outcomes.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    /**
+     * Asks for permission to perform a call. Every permitted call must be followed by {@link #onSuccess()} or
+     * {@link #onFailure()}.
+     *
+     * @return True if the call may proceed, false if it must be rejected.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                rejectedCalls.incrementAndGet();
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                rejectedCalls.incrementAndGet();
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSuccesses >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recordedCalls >= minimumCalls && recordedFailures * 100 >= failureRateThreshold * recordedCalls) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the failure rate, in percent, over the current window, or -1 if not enough calls have been recorded.
+     *
+     * @return The failure rate in percent.
+     */
+    public synchronized float getFailureRate() {
+        return recordedCalls < minimumCalls ? -1 : recordedFailures * 100f / recordedCalls;
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+
+    private void record(boolean failure) {
+        if (recordedCalls == outcomes.length) {
+            // The window is full, so the oldest outcome drops out
+            if (outcomes[nextOutcome]) {
+                recordedFailures--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        outcomes[nextOutcome] = failure;
+        if (failure) {
+            recordedFailures++;
+        }
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+    }
+
+    private void transitionTo(State newState) {
+        log.warn("Circuit breaker {} changing state from {} to {}", name, state, newState);
+        state = newState;
+        switch (newState) {
+            case OPEN -> openedAt = System.nanoTime();
+            case HALF_OPEN -> {
+                halfOpenPermits = halfOpenCalls;
+                halfOpenSuccesses = 0;
+            }
+            case CLOSED -> {
+                nextOutcome = 0;
+                recordedCalls = 0;
+                recordedFailures = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.coloza.demo.springtest.upstream;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent call latencies and answers percentile queries over them.
+ */
+public class LatencyTracker {
+    /**
+     * How many new samples may be recorded before a cached percentile is recomputed.
+     */
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    private double cachedPercentile = Double.NaN;
+    private long cachedValue;
+    private int samplesSinceComputed;
+
+    public LatencyTracker(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    /**
+     * Records the latency of a completed call.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        samplesSinceComputed++;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the specified percentile of the recorded latencies.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in nanoseconds, or -1 if nothing has been recorded yet.
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        if (percentile != cachedPercentile || samplesSinceComputed >= RECOMPUTE_INTERVAL) {
+            var sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            var index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            cachedValue = sorted[Math.max(0, Math.min(count - 1, index))];
+            cachedPercentile = percentile;
+            samplesSinceComputed = 0;
+        }
+        return cachedValue;
+    }
+}
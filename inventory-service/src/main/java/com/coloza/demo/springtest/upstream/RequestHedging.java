@@ -0,0 +1,202 @@
+package com.coloza.demo.springtest.upstream;
+
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.coloza.demo.springtest.model.HedgingStatus;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second, identical request when the first one has not answered within a delay derived from recent
+ * latencies, and uses whichever answers first. Only idempotent reads may be hedged.
+ * <p>
+ * Hedging is budgeted: every primary request earns {@code budgetPercent / 100} of a token and every hedge spends
+ * one, so hedges can never add more than that share of extra load, even when the upstream is slow across the board.
+ */
+@Slf4j
+@Component
+public class RequestHedging {
+    /**
+     * The number of latencies needed before the percentile is trusted over the initial delay.
+     */
+    private static final int MIN_SAMPLES = 100;
+
+    /**
+     * The most hedges that may be saved up while the upstream is healthy.
+     */
+    private static final long MAX_BUDGET_TOKENS = 10;
+
+    private final InventoryManagerProperties.HedgingProperties properties;
+    private final LatencyTracker latencies = new LatencyTracker(1024);
+
+    // Virtual threads make the losing request interruptible while it is blocked on the socket
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Budget tokens, in hundredths of a hedge.
+     */
+    private long budget;
+
+    private final AtomicLong primaryRequests = new AtomicLong();
+    private final AtomicLong hedgedRequests = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesDeniedByBudget = new AtomicLong();
+
+    public RequestHedging(InventoryManagerProperties properties) {
+        this.properties = properties.getHedging();
+    }
+
+    /**
+     * Executes the specified idempotent call, hedging it if it is slow and the budget allows.
+     *
+     * @param call The call to execute; it may be invoked twice concurrently.
+     * @param <T>  The result type.
+     * @return The result of whichever invocation succeeded first.
+     */
+    public <T> T execute(Supplier<T> call) {
+        if (!properties.isEnabled()) {
+            return call.get();
+        }
+
+        primaryRequests.incrementAndGet();
+        earnBudget();
+
+        var completionService = new ExecutorCompletionService<T>(executor);
+        var attempts = new ArrayList<Future<T>>(2);
+        var timings = new ArrayList<Timing>(2);
+        var primary = completionService.submit(timed(call, timings));
+        attempts.add(primary);
+        try {
+            var first = completionService.poll(getDelayNanos(), TimeUnit.NANOSECONDS);
+            if (first == null) {
+                if (spendBudget()) {
+                    hedgedRequests.incrementAndGet();
+                    attempts.add(completionService.submit(timed(call, timings)));
+                } else {
+                    hedgesDeniedByBudget.incrementAndGet();
+                }
+                first = completionService.take();
+            }
+
+            // If the first attempt to finish failed, give the other one a chance
+            var winner = first;
+            if (attempts.size() > 1 && failed(first)) {
+                winner = completionService.take();
+            }
+            if (winner != primary) {
+                hedgesWon.incrementAndGet();
+            }
+            return winner.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the inventory manager", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // Cancel whichever request is still outstanding. It has taken at least this long, and leaving it out
+            // would only keep the latencies of the attempts that won, pulling the percentile down over time.
+            for (int i = 0; i < attempts.size(); i++) {
+                if (!attempts.get(i).isDone()) {
+                    timings.get(i).record();
+                }
+                attempts.get(i).cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Returns the delay after which a hedge is sent: the configured percentile of recent latencies, or the initial
+     * delay until enough latencies have been observed, but never less than the minimum delay.
+     *
+     * @return The delay in nanoseconds.
+     */
+    public long getDelayNanos() {
+        var delay = latencies.getCount() < MIN_SAMPLES
+                ? properties.getInitialDelay().toNanos()
+                : latencies.percentile(properties.getPercentile());
+        return Math.max(delay, properties.getMinDelay().toNanos());
+    }
+
+    public HedgingStatus getStatus() {
+        return new HedgingStatus(properties.isEnabled(),
+                TimeUnit.NANOSECONDS.toMillis(getDelayNanos()),
+                primaryRequests.get(),
+                hedgedRequests.get(),
+                hedgesWon.get(),
+                hedgesDeniedByBudget.get());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> Callable<T> timed(Supplier<T> call, List<Timing> timings) {
+        var timing = new Timing(latencies);
+        timings.add(timing);
+        return () -> {
+            var result = call.get();
+            timing.record();
+            return result;
+        };
+    }
+
+    private static boolean failed(Future<?> future) {
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized void earnBudget() {
+        budget = Math.min(budget + properties.getBudgetPercent(), MAX_BUDGET_TOKENS * 100);
+    }
+
+    private synchronized boolean spendBudget() {
+        if (budget < 100) {
+            return false;
+        }
+        budget -= 100;
+        return true;
+    }
+
+    /**
+     * The latency of one attempt, recorded once: when it succeeds, or when it is cancelled.
+     */
+    private static final class Timing {
+        private final LatencyTracker latencies;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        private Timing(LatencyTracker latencies) {
+            this.latencies = latencies;
+        }
+
+        private void record() {
+            if (recorded.compareAndSet(false, true)) {
+                latencies.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.coloza.demo.springtest.upstream;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one: the first caller makes the call, and everyone who asks for
+ * the same key while it is in flight gets its result, or its failure, instead of making their own.
+ *
+ * @param <K> The key type.
+ * @param <V> The result type.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Runnable onShared;
+
+    /**
+     * @param onShared Called whenever a caller joins a call already in flight, i.e. whenever a call is saved.
+     */
+    public SingleFlight(Runnable onShared) {
+        this.onShared = onShared;
+    }
+
+    /**
+     * Makes the specified call, or waits for the one already in flight for the same key.
+     *
+     * @param key  The key.
+     * @param call The call.
+     * @return The result of the call.
+     */
+    public V execute(K key, Supplier<V> call) {
+        var future = new CompletableFuture<V>();
+        var existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            onShared.run();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            var result = call.get();
+            inFlight.remove(key, future);
+            future.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Whatever the call threw, including an Error, must release the callers waiting on it
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * The non-blocking counterpart of {@link #execute(Object, Supplier)}.
+     *
+     * @param key  The key.
+     * @param call Starts the call.
+     * @return The result of the call.
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        var future = new CompletableFuture<V>();
+        var existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            onShared.run();
+            // A copy, so that a caller cancelling its future does not cancel everyone else's
+            return existing.thenApply(result -> result);
+        }
+
+        CompletableFuture<V> started;
+        try {
+            started = call.get();
+        } catch (Throwable e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((result, e) -> {
+            inFlight.remove(key, future);
+            if (e == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(UpstreamResilience.unwrap(e));
+            }
+        });
+        return future.thenApply(result -> result);
+    }
+
+    /**
+     * Returns the number of keys with a call in flight.
+     */
+    public int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,116 @@
+package com.coloza.demo.springtest.upstream;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One Inventory Manager node, along with the passive health and load information used to choose between nodes.
+ * <p>
+ * A node is ejected after a run of consecutive failures. Once its ejection has expired a single probe request is let
+ * through: a success restores the node, a failure ejects it again.
+ */
+@Slf4j
+public class UpstreamEndpoint {
+    @Getter
+    private final String baseUrl;
+    private final int ejectAfterFailures;
+    private final long ejectionNanos;
+    private final double ewmaDecay;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private double ewmaNanos;
+    private int consecutiveFailures;
+    private boolean ejected;
+    private long ejectedUntil;
+    private boolean probing;
+
+    public UpstreamEndpoint(String baseUrl, int ejectAfterFailures, long ejectionNanos, double ewmaDecay) {
+        this.baseUrl = baseUrl;
+        this.ejectAfterFailures = Math.max(1, ejectAfterFailures);
+        this.ejectionNanos = ejectionNanos;
+        this.ewmaDecay = ewmaDecay;
+    }
+
+    /**
+     * Returns whether a request may be sent to this node now. An ejected node whose ejection has expired becomes
+     * available to exactly one caller, which probes it.
+     *
+     * @param now The current {@link System#nanoTime()}.
+     * @return True if the caller may use this node.
+     */
+    synchronized boolean tryReserve(long now) {
+        if (!ejected) {
+            return true;
+        }
+        if (probing || now - ejectedUntil < 0) {
+            return false;
+        }
+        probing = true;
+        log.info("Probing ejected inventory manager node {}", baseUrl);
+        return true;
+    }
+
+    synchronized boolean isEjected() {
+        return ejected;
+    }
+
+    synchronized long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    /**
+     * Marks the start of a request to this node.
+     *
+     * @return The start time to pass to {@link #onSuccess(long)}.
+     */
+    long start() {
+        outstanding.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    synchronized void onSuccess(long startNanos) {
+        outstanding.decrementAndGet();
+        var latency = System.nanoTime() - startNanos;
+        ewmaNanos = ewmaNanos == 0 ? latency : ewmaDecay * latency + (1 - ewmaDecay) * ewmaNanos;
+        consecutiveFailures = 0;
+        if (ejected) {
+            log.info("Inventory manager node {} is healthy again", baseUrl);
+        }
+        ejected = false;
+        probing = false;
+    }
+
+    synchronized void onFailure() {
+        outstanding.decrementAndGet();
+        consecutiveFailures++;
+        if (probing || (!ejected && consecutiveFailures >= ejectAfterFailures)) {
+            log.warn("Ejecting inventory manager node {} after {} consecutive failures", baseUrl, consecutiveFailures);
+            ejected = true;
+            ejectedUntil = System.nanoTime() + ejectionNanos;
+            probing = false;
+        }
+    }
+
+    /**
+     * Ends a request whose outcome says nothing about the node's health, e.g. a hedge that was cancelled.
+     */
+    synchronized void onCancelled() {
+        outstanding.decrementAndGet();
+        probing = false;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public synchronized double getEwmaNanos() {
+        return ewmaNanos;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+}
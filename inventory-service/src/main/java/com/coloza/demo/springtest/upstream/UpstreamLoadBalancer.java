@@ -0,0 +1,206 @@
+package com.coloza.demo.springtest.upstream;
+
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.coloza.demo.springtest.config.InventoryManagerProperties.LoadBalancingProperties;
+import com.coloza.demo.springtest.model.EndpointStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Spreads Inventory Manager requests across the configured nodes, either by the fewest requests in flight or by the
+ * lowest latency, optionally pinning each productId to one node with a consistent hash ring. Nodes that keep failing
+ * are ejected and probed again later, see {@link UpstreamEndpoint}.
+ */
+@Component
+public class UpstreamLoadBalancer {
+    /**
+     * The number of points each node gets on the hash ring, so that keys spread evenly.
+     */
+    private static final int VIRTUAL_NODES = 128;
+
+    private final LoadBalancingProperties properties;
+    private final List<UpstreamEndpoint> endpoints;
+    private final TreeMap<Long, UpstreamEndpoint> ring = new TreeMap<>();
+
+    public UpstreamLoadBalancer(InventoryManagerProperties properties) {
+        this.properties = properties.getLoadBalancing();
+        this.endpoints = properties.getEndpoints().stream()
+                .map(baseUrl -> new UpstreamEndpoint(baseUrl,
+                        this.properties.getEjectAfterFailures(),
+                        this.properties.getEjectionDuration().toNanos(),
+                        this.properties.getEwmaDecay()))
+                .toList();
+        for (var endpoint : endpoints) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(mix((endpoint.getBaseUrl() + "#" + i).hashCode()), endpoint);
+            }
+        }
+    }
+
+    /**
+     * Executes the specified call against the node chosen for the specified product, recording the outcome against
+     * that node. The call must handle responses that say nothing about node health (e.g. 404) itself and only throw
+     * for failures.
+     *
+     * @param productId The product the request is for.
+     * @param call      The call, given the chosen node's base URL.
+     * @param <T>       The result type.
+     * @return The result of the call.
+     */
+    public <T> T execute(Integer productId, Function<String, T> call) {
+        var endpoint = choose(productId);
+        var start = endpoint.start();
+        try {
+            var result = call.apply(endpoint.getBaseUrl());
+            endpoint.onSuccess(start);
+            return result;
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted() || isCancellation(e)) {
+                // A cancelled hedge, not the node's fault
+                endpoint.onCancelled();
+            } else {
+                endpoint.onFailure();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The non-blocking counterpart of {@link #execute(Integer, Function)}.
+     *
+     * @param productId The product the request is for.
+     * @param call      Starts the call, given the chosen node's base URL.
+     * @param <T>       The result type.
+     * @return The result of the call.
+     */
+    public <T> CompletableFuture<T> executeAsync(Integer productId, Function<String, CompletableFuture<T>> call) {
+        var endpoint = choose(productId);
+        var start = endpoint.start();
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(endpoint.getBaseUrl());
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                endpoint.onSuccess(start);
+            } else if (isCancellation(UpstreamResilience.unwrap(throwable))) {
+                endpoint.onCancelled();
+            } else {
+                endpoint.onFailure();
+            }
+        });
+    }
+
+    /**
+     * Chooses the node for a request. If every node is ejected, the one whose ejection ends first is used rather
+     * than failing outright.
+     *
+     * @param productId The product the request is for, used for consistent hashing.
+     * @return The chosen node.
+     */
+    UpstreamEndpoint choose(Integer productId) {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        var now = System.nanoTime();
+        var chosen = properties.isConsistentHashing() ? chooseByHash(productId, now) : chooseByLoad(now);
+        if (chosen != null) {
+            return chosen;
+        }
+        return endpoints.stream()
+                .min(Comparator.comparingLong(UpstreamEndpoint::getEjectedUntil))
+                .orElseThrow();
+    }
+
+    public List<EndpointStatus> getStatus() {
+        return endpoints.stream()
+                .map(endpoint -> new EndpointStatus(endpoint.getBaseUrl(),
+                        endpoint.getOutstanding(),
+                        endpoint.getEwmaNanos() / 1_000_000.0,
+                        endpoint.getConsecutiveFailures(),
+                        endpoint.isEjected()))
+                .toList();
+    }
+
+    private UpstreamEndpoint chooseByHash(Integer productId, long now) {
+        // Walk the ring clockwise from the key until a node will take the request
+        var key = mix(productId == null ? 0 : productId);
+        for (var endpoint : ring.tailMap(key, true).values()) {
+            if (endpoint.tryReserve(now)) {
+                return endpoint;
+            }
+        }
+        for (var endpoint : ring.headMap(key, false).values()) {
+            if (endpoint.tryReserve(now)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    private UpstreamEndpoint chooseByLoad(long now) {
+        // Start at a random node so that ties are broken randomly
+        var offset = ThreadLocalRandom.current().nextInt(endpoints.size());
+        UpstreamEndpoint best = null;
+        var bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < endpoints.size(); i++) {
+            var endpoint = endpoints.get((offset + i) % endpoints.size());
+            if (endpoint.isEjected()) {
+                // Probe a recovering node as soon as it is allowed
+                if (endpoint.tryReserve(now)) {
+                    return endpoint;
+                }
+                continue;
+            }
+            var score = score(endpoint);
+            if (score < bestScore) {
+                best = endpoint;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private double score(UpstreamEndpoint endpoint) {
+        return switch (properties.getStrategy()) {
+            case LEAST_OUTSTANDING -> endpoint.getOutstanding();
+            case EWMA -> endpoint.getEwmaNanos() * (endpoint.getOutstanding() + 1);
+        };
+    }
+
+    private static boolean isCancellation(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            // A read timeout is an InterruptedIOException too, but it is very much the node's fault
+            if (cause instanceof CancellationException
+                    || cause instanceof ClosedByInterruptException
+                    || (cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Spreads a 32-bit hash over the 64-bit ring (the finalizer of MurmurHash3).
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e53ca5a3bL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,148 @@
+package com.coloza.demo.springtest.upstream;
+
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how the calls to the Inventory Manager behave, exported through {@code /actuator/metrics}:
+ * <ul>
+ *     <li>{@code inventory.upstream.latency} - the latency of every HTTP exchange, hedges included, per operation,
+ *     with the configured percentiles</li>
+ *     <li>{@code inventory.upstream.responses} - the exchanges per operation and status class (2xx, 4xx, 5xx) or
+ *     {@code IO_ERROR} when no response arrived</li>
+ *     <li>{@code inventory.upstream.bytes} - the bytes sent and received per operation</li>
+ *     <li>{@code inventory.upstream.collapsed} - the calls per operation that were saved because an identical call was
+ *     already in flight</li>
+ *     <li>{@code inventory.upstream.bulkhead.wait} - the time spent waiting for a bulkhead slot, which is what bounds
+ *     the number of connections to the Inventory Manager</li>
+ * </ul>
+ * Exchanges slower than the configured threshold are also logged.
+ */
+@Slf4j
+@Component
+public class UpstreamMetrics {
+    private final MeterRegistry registry;
+    private final long slowCallThresholdNanos;
+    private final Map<UpstreamOperation, Timer> latencies = new EnumMap<>(UpstreamOperation.class);
+    private final Map<UpstreamOperation, Timer> bulkheadWaits = new EnumMap<>(UpstreamOperation.class);
+    private final Map<UpstreamOperation, DistributionSummary> bytesSent = new EnumMap<>(UpstreamOperation.class);
+    private final Map<UpstreamOperation, DistributionSummary> bytesReceived = new EnumMap<>(UpstreamOperation.class);
+    private final Map<UpstreamOperation, Counter> collapsed = new EnumMap<>(UpstreamOperation.class);
+
+    public UpstreamMetrics(MeterRegistry registry, InventoryManagerProperties properties) {
+        this.registry = registry;
+        var metricsProperties = properties.getMetrics();
+        this.slowCallThresholdNanos = metricsProperties.getSlowCallThreshold().toNanos();
+        var percentiles = metricsProperties.getPercentiles().stream().mapToDouble(Double::doubleValue).toArray();
+
+        for (var operation : UpstreamOperation.values()) {
+            var tag = tag(operation);
+            latencies.put(operation, Timer.builder("inventory.upstream.latency")
+                    .description("Latency of the calls to the Inventory Manager")
+                    .tag("operation", tag)
+                    .publishPercentiles(percentiles)
+                    .publishPercentileHistogram(metricsProperties.isPercentileHistogram())
+                    .register(registry));
+            bulkheadWaits.put(operation, Timer.builder("inventory.upstream.bulkhead.wait")
+                    .description("Time spent waiting for a free slot to call the Inventory Manager")
+                    .tag("operation", tag)
+                    .publishPercentiles(percentiles)
+                    .register(registry));
+            bytesSent.put(operation, bytes(tag, "sent"));
+            bytesReceived.put(operation, bytes(tag, "received"));
+            collapsed.put(operation, Counter.builder("inventory.upstream.collapsed")
+                    .description("Calls to the Inventory Manager saved by joining an identical call in flight")
+                    .tag("operation", tag)
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Records one HTTP exchange with the Inventory Manager.
+     *
+     * @param operation     The operation performed.
+     * @param uri           The URI called, for the slow-call log.
+     * @param status        The HTTP status received, or null if the exchange failed without a response.
+     * @param nanos         How long the exchange took.
+     * @param sentBytes     The size of the request body.
+     * @param receivedBytes The size of the response body.
+     */
+    public void record(UpstreamOperation operation, Object uri, Integer status, long nanos, long sentBytes,
+                       long receivedBytes) {
+        latencies.get(operation).record(nanos, TimeUnit.NANOSECONDS);
+        var statusClass = status == null ? "IO_ERROR" : status / 100 + "xx";
+        Counter.builder("inventory.upstream.responses")
+                .description("Responses from the Inventory Manager by status class")
+                .tag("operation", tag(operation))
+                .tag("status", statusClass)
+                .register(registry)
+                .increment();
+        bytesSent.get(operation).record(sentBytes);
+        bytesReceived.get(operation).record(receivedBytes);
+
+        if (nanos > slowCallThresholdNanos) {
+            log.warn("Slow call to the Inventory Manager: {} {} took {} ms ({})", operation, uri,
+                    TimeUnit.NANOSECONDS.toMillis(nanos), statusClass);
+        }
+    }
+
+    /**
+     * Records a call that was not made because an identical call was already in flight.
+     *
+     * @param operation The operation saved.
+     */
+    public void recordCollapsed(UpstreamOperation operation) {
+        collapsed.get(operation).increment();
+    }
+
+    /**
+     * Records the time a call waited for a bulkhead slot, whether or not it got one.
+     *
+     * @param operation The operation performed.
+     * @param nanos     The time spent waiting.
+     */
+    public void recordBulkheadWait(UpstreamOperation operation, long nanos) {
+        bulkheadWaits.get(operation).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Exports the free slots of the specified bulkhead as a gauge.
+     *
+     * @param operation The operation the bulkhead guards.
+     * @param bulkhead  The bulkhead.
+     */
+    public void registerBulkhead(UpstreamOperation operation, Bulkhead bulkhead) {
+        Gauge.builder("inventory.upstream.bulkhead.available", bulkhead, Bulkhead::getAvailablePermits)
+                .description("Free slots to call the Inventory Manager")
+                .tag("operation", tag(operation))
+                .register(registry);
+    }
+
+    public Duration getSlowCallThreshold() {
+        return Duration.ofNanos(slowCallThresholdNanos);
+    }
+
+    private DistributionSummary bytes(String operation, String direction) {
+        return DistributionSummary.builder("inventory.upstream.bytes")
+                .description("Body sizes of the calls to the Inventory Manager")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("direction", direction)
+                .register(registry);
+    }
+
+    private static String tag(UpstreamOperation operation) {
+        return operation.name().toLowerCase();
+    }
+}
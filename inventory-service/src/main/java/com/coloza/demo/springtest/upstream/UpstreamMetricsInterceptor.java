@@ -0,0 +1,95 @@
+package com.coloza.demo.springtest.upstream;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Feeds every exchange of a RestTemplate with the Inventory Manager into {@link UpstreamMetrics}. The response body
+ * is read here so that its transfer counts towards the latency and its size can be recorded; inventory records are
+ * small enough for that.
+ */
+public class UpstreamMetricsInterceptor implements ClientHttpRequestInterceptor {
+    private final UpstreamMetrics metrics;
+
+    public UpstreamMetricsInterceptor(UpstreamMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        var operation = HttpMethod.GET.equals(request.getMethod()) ? UpstreamOperation.GET : UpstreamOperation.PURCHASE;
+        var start = System.nanoTime();
+        ClientHttpResponse response;
+        try {
+            response = execution.execute(request, body);
+        } catch (IOException e) {
+            metrics.record(operation, request.getURI(), null, System.nanoTime() - start, body.length, 0);
+            throw e;
+        }
+
+        byte[] responseBody;
+        try {
+            responseBody = readBody(response);
+        } catch (IOException | RuntimeException e) {
+            // The caller never gets the response, so its connection has to be released here
+            response.close();
+            metrics.record(operation, request.getURI(), null, System.nanoTime() - start, body.length, 0);
+            throw e;
+        }
+        metrics.record(operation, request.getURI(), response.getStatusCode().value(), System.nanoTime() - start,
+                body.length, responseBody.length);
+        return new BufferedResponse(response, responseBody);
+    }
+
+    private static byte[] readBody(ClientHttpResponse response) throws IOException {
+        try {
+            return response.getBody().readAllBytes();
+        } catch (IOException e) {
+            // HttpURLConnection has no stream at all for an error response without a body
+            if (response.getStatusCode().isError()) {
+                return new byte[0];
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A response whose body has already been read.
+     */
+    private record BufferedResponse(ClientHttpResponse delegate, byte[] body) implements ClientHttpResponse {
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.coloza.demo.springtest.upstream;
+
+/**
+ * The operations we perform against the Inventory Manager. Each one is guarded independently so that a struggling
+ * purchase endpoint does not take reads down with it, and vice versa.
+ */
+public enum UpstreamOperation {
+    GET,
+    PURCHASE
+}
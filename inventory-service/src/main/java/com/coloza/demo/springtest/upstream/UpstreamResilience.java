@@ -0,0 +1,172 @@
+package com.coloza.demo.springtest.upstream;
+
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.coloza.demo.springtest.model.UpstreamStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Guards every call to the Inventory Manager with a per-operation bulkhead and circuit breaker.
+ */
+@Component
+public class UpstreamResilience {
+    private final Map<UpstreamOperation, CircuitBreaker> circuitBreakers = new EnumMap<>(UpstreamOperation.class);
+    private final Map<UpstreamOperation, Bulkhead> bulkheads = new EnumMap<>(UpstreamOperation.class);
+
+    private final UpstreamMetrics metrics;
+
+    public UpstreamResilience(InventoryManagerProperties properties, UpstreamMetrics metrics) {
+        this.metrics = metrics;
+        var breakerProperties = properties.getCircuitBreaker();
+        var bulkheadProperties = properties.getBulkhead();
+        for (var operation : UpstreamOperation.values()) {
+            var name = "inventoryManager-" + operation.name().toLowerCase();
+            circuitBreakers.put(operation, new CircuitBreaker(name,
+                    breakerProperties.getSlidingWindowSize(),
+                    breakerProperties.getMinimumCalls(),
+                    breakerProperties.getFailureRateThreshold(),
+                    breakerProperties.getOpenDuration(),
+                    breakerProperties.getHalfOpenCalls()));
+            bulkheads.put(operation, new Bulkhead(name,
+                    bulkheadProperties.getMaxConcurrentCalls(),
+                    bulkheadProperties.getMaxWait()));
+            metrics.registerBulkhead(operation, bulkheads.get(operation));
+        }
+    }
+
+    /**
+     * Executes the specified call if the operation's bulkhead has a free slot and its circuit breaker is not open.
+     * Calls that throw a {@link RestClientException} are recorded as failures; anything the call returns normally,
+     * including an empty result for a 4xx response, counts as a success.
+     *
+     * @param operation The operation being performed.
+     * @param call      The upstream call.
+     * @param <T>       The result type.
+     * @return The result of the call.
+     * @throws UpstreamUnavailableException If the call was rejected or failed.
+     */
+    public <T> T execute(UpstreamOperation operation, Supplier<T> call) {
+        var bulkhead = bulkheads.get(operation);
+        var waitStart = System.nanoTime();
+        var acquired = bulkhead.tryAcquire();
+        metrics.recordBulkheadWait(operation, System.nanoTime() - waitStart);
+        if (!acquired) {
+            throw new UpstreamUnavailableException(operation, "bulkhead is full");
+        }
+        try {
+            var circuitBreaker = circuitBreakers.get(operation);
+            if (!circuitBreaker.tryAcquirePermission()) {
+                throw new UpstreamUnavailableException(operation, "circuit breaker is open");
+            }
+            try {
+                var result = call.get();
+                circuitBreaker.onSuccess();
+                return result;
+            } catch (RestClientException e) {
+                circuitBreaker.onFailure();
+                throw new UpstreamUnavailableException(operation, e.getMessage(), e);
+            } catch (RuntimeException e) {
+                circuitBreaker.onFailure();
+                throw e;
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * The non-blocking counterpart of {@link #execute(UpstreamOperation, Supplier)}. The bulkhead never waits for a
+     * free slot, and its slot is held until the returned future completes rather than while a thread is busy.
+     * Futures that fail with a {@link RestClientException} or an {@link IOException} are recorded as failures.
+     *
+     * @param operation The operation being performed.
+     * @param call      Starts the upstream call.
+     * @param <T>       The result type.
+     * @return The result of the call, or a future failed with {@link UpstreamUnavailableException}.
+     */
+    public <T> CompletableFuture<T> executeAsync(UpstreamOperation operation, Supplier<CompletableFuture<T>> call) {
+        var bulkhead = bulkheads.get(operation);
+        if (!bulkhead.tryAcquireImmediately()) {
+            return CompletableFuture.failedFuture(new UpstreamUnavailableException(operation, "bulkhead is full"));
+        }
+        var circuitBreaker = circuitBreakers.get(operation);
+        if (!circuitBreaker.tryAcquirePermission()) {
+            bulkhead.release();
+            return CompletableFuture.failedFuture(new UpstreamUnavailableException(operation, "circuit breaker is open"));
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        var result = new CompletableFuture<T>();
+        future.whenComplete((value, throwable) -> {
+            bulkhead.release();
+            if (throwable == null) {
+                circuitBreaker.onSuccess();
+                result.complete(value);
+                return;
+            }
+            circuitBreaker.onFailure();
+            var cause = unwrap(throwable);
+            if (cause instanceof RestClientException || cause instanceof IOException) {
+                result.completeExceptionally(new UpstreamUnavailableException(operation, cause.getMessage(), cause));
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Strips the {@link CompletionException} that dependent futures wrap failures in.
+     *
+     * @param throwable The failure of a future.
+     * @return The underlying failure.
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+    }
+
+    public CircuitBreaker getCircuitBreaker(UpstreamOperation operation) {
+        return circuitBreakers.get(operation);
+    }
+
+    public Bulkhead getBulkhead(UpstreamOperation operation) {
+        return bulkheads.get(operation);
+    }
+
+    /**
+     * Returns the current state of the guards for every operation.
+     *
+     * @return One status per operation.
+     */
+    public List<UpstreamStatus> getStatus() {
+        return Arrays.stream(UpstreamOperation.values())
+                .map(operation -> {
+                    var circuitBreaker = circuitBreakers.get(operation);
+                    var bulkhead = bulkheads.get(operation);
+                    return new UpstreamStatus(operation.name(),
+                            circuitBreaker.getState().name(),
+                            circuitBreaker.getFailureRate(),
+                            circuitBreaker.getRejectedCalls(),
+                            bulkhead.getAvailablePermits(),
+                            bulkhead.getRejectedCalls());
+                })
+                .toList();
+    }
+}
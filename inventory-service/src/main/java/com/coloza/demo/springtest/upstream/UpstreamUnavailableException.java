@@ -0,0 +1,25 @@
+package com.coloza.demo.springtest.upstream;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a call to the Inventory Manager was rejected or failed, so the request can be failed fast with a
+ * 503 Service Unavailable instead of tying up a servlet thread.
+ */
+@Getter
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class UpstreamUnavailableException extends RuntimeException {
+    private final UpstreamOperation operation;
+
+    public UpstreamUnavailableException(UpstreamOperation operation, String message) {
+        super(operation + ": " + message);
+        this.operation = operation;
+    }
+
+    public UpstreamUnavailableException(UpstreamOperation operation, String message, Throwable cause) {
+        super(operation + ": " + message, cause);
+        this.operation = operation;
+    }
+}
@@ -1,43 +1,107 @@
 package com.coloza.demo.springtest.web;
 
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.coloza.demo.springtest.model.InventoryRecord;
 import com.coloza.demo.springtest.model.PurchaseRecord;
+import com.coloza.demo.springtest.service.AsyncInventoryService;
 import com.coloza.demo.springtest.service.InventoryService;
+import com.coloza.demo.springtest.stream.InventoryStockStream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
 @RequiredArgsConstructor
 public class InventoryController {
     private final InventoryService inventoryService;
+    private final AsyncInventoryService asyncInventoryService;
+    private final InventoryStockStream inventoryStockStream;
+    private final InventoryManagerProperties properties;
 
     @GetMapping("/inventory/{id}")
     public ResponseEntity<?> getInventoryRecord(@PathVariable Integer id) {
-        return inventoryService.getInventoryRecord(id)
-                .map(inventoryRecord -> {
-                    try {
-                        return ResponseEntity
-                                .ok()
-                                .location(new URI("/inventory/" + inventoryRecord.getProductId()))
-                                .body(inventoryRecord);
-                    } catch (URISyntaxException e) {
-                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-                    }
-                })
-                .orElse(ResponseEntity.notFound().build());
+        return toResponseEntity(inventoryService.getInventoryRecord(id));
     }
 
     @PostMapping("/inventory/purchase-record")
     public ResponseEntity<?> addPurchaseRecord(@RequestBody PurchaseRecord purchaseRecord) {
         log.info("Creating new purchase record: {}", purchaseRecord);
 
-        return inventoryService.purchaseProduct(purchaseRecord.getProductId(), purchaseRecord.getQuantityPurchased())
+        return toResponseEntity(inventoryService.purchaseProduct(purchaseRecord.getProductId(),
+                purchaseRecord.getQuantityPurchased()));
+    }
+
+    /**
+     * Purchases several products in one request, such as the line items of an order.
+     *
+     * @param purchaseRecords The purchases to make.
+     * @return One result per purchase, in the same order, or 400 Bad Request if there are too many.
+     */
+    @PostMapping("/inventory/purchase-records")
+    public ResponseEntity<?> addPurchaseRecords(@RequestBody List<PurchaseRecord> purchaseRecords) {
+        if (purchaseRecords.size() > properties.getBulk().getMaxItems()) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.info("Creating {} purchase records", purchaseRecords.size());
+
+        return ResponseEntity.ok(inventoryService.purchaseProducts(purchaseRecords));
+    }
+
+    /**
+     * Streams changes to the inventory records of the specified products as Server-Sent Events named "inventory".
+     *
+     * @param ids The product IDs to watch.
+     * @return The event stream, or 400 Bad Request if there are too many products.
+     */
+    @GetMapping(value = "/inventory/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamInventoryRecords(@RequestParam List<Integer> ids) {
+        if (ids.stream().distinct().count() > properties.getStream().getMaxProducts()) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.info("Opening inventory stream for product ids: {}", ids);
+        return ResponseEntity.ok(inventoryStockStream.subscribe(ids));
+    }
+
+    /**
+     * Non-blocking variant of {@link #getInventoryRecord(Integer)}: the servlet thread is released while the
+     * Inventory Manager is being called.
+     *
+     * @param id The product ID.
+     * @return The inventory record, or 404 Not Found.
+     */
+    @GetMapping("/async/inventory/{id}")
+    public CompletableFuture<ResponseEntity<?>> getInventoryRecordAsync(@PathVariable Integer id) {
+        return asyncInventoryService.getInventoryRecord(id).thenApply(this::toResponseEntity);
+    }
+
+    /**
+     * Non-blocking variant of {@link #addPurchaseRecord(PurchaseRecord)}.
+     *
+     * @param purchaseRecord The purchase to record.
+     * @return The updated inventory record, or 404 Not Found.
+     */
+    @PostMapping("/async/inventory/purchase-record")
+    public CompletableFuture<ResponseEntity<?>> addPurchaseRecordAsync(@RequestBody PurchaseRecord purchaseRecord) {
+        log.info("Creating new purchase record: {}", purchaseRecord);
+
+        return asyncInventoryService.purchaseProduct(purchaseRecord.getProductId(),
+                        purchaseRecord.getQuantityPurchased())
+                .thenApply(this::toResponseEntity);
+    }
+
+    private ResponseEntity<?> toResponseEntity(Optional<InventoryRecord> record) {
+        return record
                 .map(inventoryRecord -> {
                     try {
                         return ResponseEntity
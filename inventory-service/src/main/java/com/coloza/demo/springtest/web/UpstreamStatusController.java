@@ -0,0 +1,55 @@
+package com.coloza.demo.springtest.web;
+
+import com.coloza.demo.springtest.model.EndpointStatus;
+import com.coloza.demo.springtest.model.HedgingStatus;
+import com.coloza.demo.springtest.model.UpstreamStatus;
+import com.coloza.demo.springtest.upstream.RequestHedging;
+import com.coloza.demo.springtest.upstream.UpstreamLoadBalancer;
+import com.coloza.demo.springtest.upstream.UpstreamResilience;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Exposes the state of the circuit breakers, bulkheads, request hedging and load balancing used for calls to the
+ * Inventory Manager.
+ */
+@RestController
+@RequiredArgsConstructor
+public class UpstreamStatusController {
+    private final UpstreamResilience resilience;
+    private final RequestHedging hedging;
+    private final UpstreamLoadBalancer loadBalancer;
+
+    /**
+     * Returns the circuit breaker state and rejection counters for every Inventory Manager operation.
+     *
+     * @return One status per operation.
+     */
+    @GetMapping("/admin/upstream")
+    public List<UpstreamStatus> getUpstreamStatus() {
+        return resilience.getStatus();
+    }
+
+    /**
+     * Returns the current hedge delay and how many GETs were hedged.
+     *
+     * @return The hedging counters.
+     */
+    @GetMapping("/admin/upstream/hedging")
+    public HedgingStatus getHedgingStatus() {
+        return hedging.getStatus();
+    }
+
+    /**
+     * Returns the load and health of every Inventory Manager node.
+     *
+     * @return One status per node.
+     */
+    @GetMapping("/admin/upstream/endpoints")
+    public List<EndpointStatus> getEndpointStatus() {
+        return loadBalancer.getStatus();
+    }
+}
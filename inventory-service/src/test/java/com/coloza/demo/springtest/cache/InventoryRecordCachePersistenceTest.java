@@ -0,0 +1,81 @@
+package com.coloza.demo.springtest.cache;
+
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.coloza.demo.springtest.model.InventoryRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+class InventoryRecordCachePersistenceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSnapshotIsRestoredOnStart() {
+        var properties = propertiesFor(tempDir.resolve("inventory.snapshot"));
+
+        // Fill a cache and shut it down, which takes a final snapshot
+        var cache = new InventoryRecordCache(event -> {
+        });
+        cache.put(new InventoryRecord(1, 500, "Super Great Product", "Great Products"));
+        cache.put(new InventoryRecord(2, null, null, "Great Products"));
+        var persistence = new InventoryRecordCachePersistence(cache, properties);
+        persistence.start();
+        persistence.stop();
+
+        // A new cache picks the records up at startup
+        var restarted = new InventoryRecordCache(event -> {
+        });
+        var restartedPersistence = new InventoryRecordCachePersistence(restarted, properties);
+        restartedPersistence.start();
+        restartedPersistence.stop();
+
+        Assertions.assertEquals(2, restarted.size(), "Both records should be restored");
+        var record = restarted.get(1);
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+        Assertions.assertEquals(500, record.get().getQuantity().intValue(), "The quantity should be 500");
+        Assertions.assertEquals("Super Great Product", record.get().getProductName());
+        Assertions.assertNull(restarted.get(2).orElseThrow().getQuantity(), "A missing quantity should stay missing");
+    }
+
+    @Test
+    void testStaleRecordsAreNotRestored() throws Exception {
+        var path = tempDir.resolve("inventory.snapshot");
+        var cache = new InventoryRecordCache(event -> {
+        });
+        cache.restore(new InventoryRecordCache.CachedRecord(new InventoryRecord(1, 500, "Old", "Old"),
+                System.currentTimeMillis() - Duration.ofHours(1).toMillis()));
+        cache.restore(new InventoryRecordCache.CachedRecord(new InventoryRecord(2, 10, "New", "New"),
+                System.currentTimeMillis()));
+        InventoryRecordSnapshot.write(path, cache.entries());
+
+        var records = InventoryRecordSnapshot.read(path, System.currentTimeMillis() - Duration.ofMinutes(10).toMillis());
+
+        Assertions.assertEquals(1, records.size(), "Only the recent record should be read");
+        Assertions.assertEquals(2, records.get(0).record().getProductId().intValue());
+    }
+
+    @Test
+    void testCorruptSnapshotIsIgnored() throws Exception {
+        var path = tempDir.resolve("inventory.snapshot");
+        Files.write(path, new byte[]{1, 2, 3});
+
+        var cache = new InventoryRecordCache(event -> {
+        });
+        var persistence = new InventoryRecordCachePersistence(cache, propertiesFor(path));
+        persistence.load();
+
+        Assertions.assertEquals(0, cache.size(), "Nothing should be restored from a corrupt snapshot");
+    }
+
+    private static InventoryManagerProperties propertiesFor(Path path) {
+        var properties = new InventoryManagerProperties();
+        properties.getCache().setSnapshotPath(path.toString());
+        return properties;
+    }
+}
@@ -0,0 +1,13 @@
+package com.coloza.demo.springtest.integration;
+
+import org.junit.jupiter.api.Tag;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Repeats every run of {@link InventoryServiceLoadTest} with the multiplexed HTTP/2 client, so that connection counts
+ * and tail latencies can be compared with the HTTP/1.1 client line by line.
+ */
+@Tag("load")
+@TestPropertySource(properties = "inventoryManager.httpVersion=HTTP_2")
+class InventoryServiceHttp2LoadTest extends InventoryServiceLoadTest {
+}
@@ -0,0 +1,149 @@
+package com.coloza.demo.springtest.integration;
+
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+/**
+ * Drives inventory-service at a fixed request rate against a WireMock Inventory Manager that serves the stubs in
+ * {@code src/test/resources/mappings} with a configurable latency distribution, error rate and connection reset rate.
+ * Run with {@code ./gradlew :inventory-service:loadTest}, optionally overriding the defaults of a run:
+ * <pre>
+ * -Dload.rate=200 -Dload.durationSeconds=10 -Dload.latency=lognormal:50:0.4 -Dload.errorRate=0.01 -Dload.resetRate=0.01
+ * </pre>
+ * Each test prints one line per run with throughput, latency percentiles, upstream connections and thread, heap and
+ * GC usage, so that a client-side change can be compared against the numbers of the previous build.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "inventoryManager.readTimeout=30s",
+        "inventoryManager.bulkhead.maxConcurrentCalls=10000"
+})
+// A fresh context per run, so that a circuit breaker opened by one profile does not skew the next
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class InventoryServiceLoadTest {
+    private static final int UPSTREAM_PORT = 10000;
+    private static final int RATE = Integer.getInteger("load.rate", 200);
+    private static final Duration DURATION = Duration.ofSeconds(Long.getLong("load.durationSeconds", 10));
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private InventoryManagerProperties properties;
+
+    private WireMockServer wireMockServer;
+
+    private LoadDriver driver;
+
+    @BeforeEach
+    void beforeEach() {
+        driver = new LoadDriver(UPSTREAM_PORT);
+    }
+
+    @AfterEach
+    void afterEach() {
+        wireMockServer.stop();
+        driver.close();
+    }
+
+    @Test
+    void baseline() {
+        var profile = UpstreamProfile.fromSystemProperties("lognormal:50:0.4", 0, 0);
+        startUpstream(profile);
+        warmUp();
+
+        var reports = List.of(
+                driver.run("GET blocking", get("/inventory/1"), RATE, DURATION),
+                driver.run("GET async", get("/async/inventory/1"), RATE, DURATION),
+                driver.run("POST blocking", purchase("/inventory/purchase-record"), RATE, DURATION),
+                driver.run("POST async", purchase("/async/inventory/purchase-record"), RATE, DURATION));
+        print(profile, reports);
+
+        reports.forEach(report -> Assertions.assertEquals(0, report.failures(),
+                report.name() + ": every request should be answered"));
+    }
+
+    @Test
+    void faults() {
+        var profile = UpstreamProfile.fromSystemProperties("lognormal:50:0.4", 0.05, 0.02);
+        startUpstream(profile);
+        warmUp();
+
+        var reports = List.of(
+                driver.run("GET blocking", get("/inventory/1"), RATE, DURATION),
+                driver.run("POST blocking", purchase("/inventory/purchase-record"), RATE, DURATION));
+        print(profile, reports);
+
+        // Upstream failures may turn into 503s or cached answers, but never into dropped connections
+        reports.forEach(report -> Assertions.assertEquals(0, report.failures(),
+                report.name() + ": every request should be answered"));
+    }
+
+    @Test
+    void compareBlockingAndNonBlocking() {
+        // A slow upstream shows how many threads each path ties up
+        var profile = new UpstreamProfile("fixed:500", 0, 0);
+        startUpstream(profile);
+        warmUp();
+
+        var reports = List.of(
+                driver.run("GET blocking", get("/inventory/1"), 500, Duration.ofSeconds(2)),
+                driver.run("GET async", get("/async/inventory/1"), 500, Duration.ofSeconds(2)));
+        print(profile, reports);
+
+        reports.forEach(report -> Assertions.assertEquals(report.requests(), report.ok(),
+                report.name() + ": every request should succeed"));
+    }
+
+    private void startUpstream(UpstreamProfile profile) {
+        // A WireMock Server that can hold many delayed responses at once
+        wireMockServer = new WireMockServer(options()
+                .port(UPSTREAM_PORT)
+                .containerThreads(200)
+                .asynchronousResponseEnabled(true)
+                .asynchronousResponseThreads(50)
+                .extensions(profile));
+        wireMockServer.start();
+    }
+
+    private void warmUp() {
+        driver.run("warm-up", get("/inventory/1"), 50, Duration.ofSeconds(1));
+        driver.run("warm-up", get("/async/inventory/1"), 50, Duration.ofSeconds(1));
+    }
+
+    private Supplier<HttpRequest> get(String path) {
+        return () -> HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build();
+    }
+
+    private Supplier<HttpRequest> purchase(String path) {
+        return () -> HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"productId\":1,\"quantityPurchased\":1}"))
+                .build();
+    }
+
+    private void print(UpstreamProfile profile, List<LoadReport> reports) {
+        System.out.println("Upstream: " + profile + ", client: " + properties.getHttpVersion());
+        System.out.println(LoadReport.header());
+        reports.forEach(report -> System.out.println(report.format()));
+    }
+}
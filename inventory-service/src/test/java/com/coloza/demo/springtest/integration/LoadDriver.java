@@ -0,0 +1,134 @@
+package com.coloza.demo.springtest.integration;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Sends requests at a fixed rate regardless of how fast they are answered (an open loop), so that a slow service
+ * cannot slow down its own load. Latencies are measured from the time a request was due rather than sent, which
+ * keeps a stalled driver from hiding the stall.
+ */
+public class LoadDriver implements AutoCloseable {
+    private static final long CONNECTION_SAMPLE_MILLIS = 50;
+
+    private final int upstreamPort;
+    // A small, fixed client pool so that the load generator does not skew the thread counts
+    private final ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+    private final HttpClient client = HttpClient.newBuilder().executor(clientExecutor).build();
+
+    /**
+     * @param upstreamPort The port of the Inventory Manager stub, whose connections are counted during each run.
+     */
+    public LoadDriver(int upstreamPort) {
+        this.upstreamPort = upstreamPort;
+    }
+
+    /**
+     * Sends the specified requests at the specified rate and waits for every response.
+     *
+     * @param name     The name of the run, for the report.
+     * @param request  Creates the next request.
+     * @param rate     The requests per second.
+     * @param duration How long to send requests for.
+     * @return The measurements of the run.
+     */
+    public LoadReport run(String name, Supplier<HttpRequest> request, int rate, Duration duration) {
+        var requests = (int) Math.max(1, rate * duration.toMillis() / 1000);
+        var intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        var latencies = new long[requests];
+        var statuses = new int[requests];
+        var remaining = new CountDownLatch(requests);
+        var failures = new AtomicInteger();
+
+        var threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        var gcCountBefore = gcCount();
+        var gcTimeBefore = gcTime();
+
+        var peakConnections = new AtomicInteger(UpstreamConnections.count(upstreamPort));
+        var sampler = Thread.ofVirtual().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakConnections.accumulateAndGet(UpstreamConnections.count(upstreamPort), Math::max);
+                try {
+                    Thread.sleep(CONNECTION_SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        var start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            var due = start + i * intervalNanos;
+            var wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            var index = i;
+            client.sendAsync(request.get(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        latencies[index] = System.nanoTime() - due;
+                        if (response == null) {
+                            failures.incrementAndGet();
+                        } else {
+                            statuses[index] = response.statusCode();
+                        }
+                        remaining.countDown();
+                    });
+        }
+        try {
+            remaining.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for responses", e);
+        }
+        var elapsedNanos = System.nanoTime() - start;
+        sampler.interrupt();
+
+        var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        Arrays.sort(latencies);
+        return new LoadReport(name, rate, requests,
+                count(statuses, 2), count(statuses, 4), count(statuses, 5), failures.get(),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), percentile(latencies, 1.0),
+                peakConnections.get(), threads.getPeakThreadCount(), heap / (1024 * 1024),
+                gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+    }
+
+    @Override
+    public void close() {
+        clientExecutor.shutdownNow();
+    }
+
+    private static long count(int[] statuses, int statusClass) {
+        return Arrays.stream(statuses).filter(status -> status / 100 == statusClass).count();
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        var index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
@@ -0,0 +1,27 @@
+package com.coloza.demo.springtest.integration;
+
+/**
+ * The measurements of one {@link LoadDriver} run. Latencies are in milliseconds; the connections are the most
+ * connections to the Inventory Manager seen at once, or -1 where they cannot be counted.
+ */
+public record LoadReport(String name, int rate, int requests, long ok, long clientErrors, long serverErrors,
+                         long failures, long elapsedMillis, double p50, double p90, double p99, double p999,
+                         double max, int peakConnections, int peakThreads, long heapUsedMb, long gcCount,
+                         long gcMillis) {
+
+    public static String header() {
+        return String.format("%-22s %6s %7s %7s %5s %5s %5s %9s %8s %8s %8s %8s %8s %6s %6s %7s %5s %6s",
+                "run", "rate", "sent", "2xx", "4xx", "5xx", "fail", "req/s", "p50", "p90", "p99", "p99.9", "max",
+                "conns", "thr", "heapMB", "gc", "gcMs");
+    }
+
+    public double throughput() {
+        return ok * 1000.0 / Math.max(1, elapsedMillis);
+    }
+
+    public String format() {
+        return String.format("%-22s %6d %7d %7d %5d %5d %5d %9.1f %8.1f %8.1f %8.1f %8.1f %8.1f %6d %6d %7d %5d %6d",
+                name, rate, requests, ok, clientErrors, serverErrors, failures, throughput(), p50, p90, p99, p999,
+                max, peakConnections, peakThreads, heapUsedMb, gcCount, gcMillis);
+    }
+}
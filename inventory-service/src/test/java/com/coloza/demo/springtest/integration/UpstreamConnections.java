@@ -0,0 +1,46 @@
+package com.coloza.demo.springtest.integration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Counts the established TCP connections to a local port by reading {@code /proc/net/tcp}, so only works on Linux.
+ */
+final class UpstreamConnections {
+    private static final List<Path> TABLES = List.of(Path.of("/proc/net/tcp"), Path.of("/proc/net/tcp6"));
+    private static final String ESTABLISHED = "01";
+
+    private UpstreamConnections() {
+    }
+
+    /**
+     * Returns the number of established connections whose remote end is the specified port, or -1 if the
+     * connection tables cannot be read.
+     *
+     * @param port The port the connections go to.
+     * @return The number of connections.
+     */
+    static int count(int port) {
+        var remotePort = String.format(":%04X", port);
+        var count = 0;
+        for (var table : TABLES) {
+            if (!Files.isReadable(table)) {
+                return -1;
+            }
+            try (var lines = Files.lines(table)) {
+                // Columns: sl local_address rem_address st ...
+                count += (int) lines.skip(1)
+                        .map(line -> line.trim().split("\\s+"))
+                        .filter(columns -> columns.length > 3
+                                && columns[2].endsWith(remotePort)
+                                && columns[3].equals(ESTABLISHED))
+                        .count();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+        return count;
+    }
+}
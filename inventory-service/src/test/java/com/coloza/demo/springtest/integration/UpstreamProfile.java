@@ -0,0 +1,86 @@
+package com.coloza.demo.springtest.integration;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformerV2;
+import com.github.tomakehurst.wiremock.http.DelayDistribution;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.http.FixedDelayDistribution;
+import com.github.tomakehurst.wiremock.http.LogNormal;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.http.UniformDistribution;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Makes every WireMock stub, including the ones in {@code src/test/resources/mappings}, behave like an Inventory
+ * Manager with the given latency distribution, rate of 500 responses and rate of connection resets.
+ * <p>
+ * Latencies are written as {@code fixed:<millis>}, {@code uniform:<lowerMillis>:<upperMillis>} or
+ * {@code lognormal:<medianMillis>:<sigma>}.
+ */
+public class UpstreamProfile implements ResponseDefinitionTransformerV2 {
+    private final String latency;
+    private final DelayDistribution delay;
+    private final double errorRate;
+    private final double resetRate;
+
+    public UpstreamProfile(String latency, double errorRate, double resetRate) {
+        this.latency = latency;
+        this.delay = parseLatency(latency);
+        this.errorRate = errorRate;
+        this.resetRate = resetRate;
+    }
+
+    /**
+     * Reads the profile from the {@code load.latency}, {@code load.errorRate} and {@code load.resetRate} system
+     * properties, falling back to the specified defaults.
+     */
+    public static UpstreamProfile fromSystemProperties(String latency, double errorRate, double resetRate) {
+        return new UpstreamProfile(
+                System.getProperty("load.latency", latency),
+                Double.parseDouble(System.getProperty("load.errorRate", String.valueOf(errorRate))),
+                Double.parseDouble(System.getProperty("load.resetRate", String.valueOf(resetRate))));
+    }
+
+    @Override
+    public ResponseDefinition transform(ServeEvent serveEvent) {
+        var random = ThreadLocalRandom.current().nextDouble();
+        if (random < resetRate) {
+            return ResponseDefinitionBuilder.responseDefinition()
+                    .withFault(Fault.CONNECTION_RESET_BY_PEER)
+                    .withRandomDelay(delay)
+                    .build();
+        }
+        if (random < resetRate + errorRate) {
+            return ResponseDefinitionBuilder.responseDefinition()
+                    .withStatus(500)
+                    .withBody("Injected failure")
+                    .withRandomDelay(delay)
+                    .build();
+        }
+        return ResponseDefinitionBuilder.like(serveEvent.getResponseDefinition())
+                .withRandomDelay(delay)
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return "upstream-profile";
+    }
+
+    @Override
+    public String toString() {
+        return String.format("latency=%s errorRate=%.3f resetRate=%.3f", latency, errorRate, resetRate);
+    }
+
+    private static DelayDistribution parseLatency(String latency) {
+        var parts = latency.split(":");
+        return switch (parts[0]) {
+            case "fixed" -> new FixedDelayDistribution(Long.parseLong(parts[1]));
+            case "uniform" -> new UniformDistribution(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            case "lognormal" -> new LogNormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+            default -> throw new IllegalArgumentException("Unknown latency distribution: " + latency);
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package com.coloza.demo.springtest.reservation;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+class ReservationLedgerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testUnreconciledReservationsAreReplayed() throws IOException {
+        var path = directory.resolve("reservations.ledger");
+        try (var ledger = new ReservationLedger(path, true)) {
+            var first = ledger.append(1, 2);
+            ledger.append(1, 3);
+            var third = ledger.append(2, 4);
+            ledger.confirm(List.of(first));
+            ledger.reject(List.of(third));
+        }
+
+        try (var ledger = new ReservationLedger(path, false)) {
+            var pending = ledger.pending();
+            Assertions.assertEquals(1, pending.size(), "Only the unsettled reservation should be pending");
+            Assertions.assertEquals(2, pending.get(0).sequence());
+            Assertions.assertEquals(3, pending.get(0).quantity());
+
+            Assertions.assertEquals(4, ledger.append(1, 1).sequence(), "Sequences should continue after a restart");
+        }
+    }
+
+    @Test
+    void testTornLineIsIgnored() throws IOException {
+        var path = directory.resolve("reservations.ledger");
+        try (var ledger = new ReservationLedger(path, false)) {
+            ledger.append(1, 2);
+        }
+        Files.writeString(path, "R 2 1", StandardOpenOption.APPEND);
+
+        try (var ledger = new ReservationLedger(path, false)) {
+            Assertions.assertEquals(1, ledger.pending().size(), "The torn reservation should be ignored");
+        }
+    }
+}
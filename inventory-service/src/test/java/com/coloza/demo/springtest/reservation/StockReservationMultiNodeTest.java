@@ -0,0 +1,121 @@
+package com.coloza.demo.springtest.reservation;
+
+import com.coloza.demo.springtest.cache.InventoryRecordCache;
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import com.coloza.demo.springtest.model.InventoryRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class StockReservationMultiNodeTest {
+
+    private static final int STOCK = 100;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRepeatedReconciliationNeverOversells() throws IOException {
+        // Three nodes with a share of 0.3 each sell from one upstream stock
+        var stock = new AtomicInteger(STOCK);
+        var refused = new AtomicInteger();
+        var nodes = new ArrayList<StockReservationService>();
+        for (int i = 0; i < 3; i++) {
+            nodes.add(node(i, stock, refused));
+        }
+
+        try {
+            int granted = 0;
+            for (int round = 0; round < 5; round++) {
+                for (var node : nodes) {
+                    while (node.tryReserve(1, 1).isPresent()) {
+                        granted++;
+                    }
+                }
+                Assertions.assertTrue(granted <= STOCK, "Round " + round + " granted " + granted + " units");
+
+                for (var node : nodes) {
+                    node.reconcile();
+                }
+            }
+
+            Assertions.assertEquals(90, granted, "Each node should sell exactly its share");
+            Assertions.assertEquals(10, stock.get(), "Every reservation should be reconciled");
+            Assertions.assertEquals(0, refused.get(), "No reconciliation should be refused");
+        } finally {
+            for (var node : nodes) {
+                node.stop();
+            }
+        }
+    }
+
+    @Test
+    void testReplayedReservationsCountAgainstTheAllotment() throws IOException {
+        var stock = new AtomicInteger(STOCK);
+        var refused = new AtomicInteger();
+
+        // The node sells 10 units and stops before reconciling them
+        var stopped = node(0, stock, refused);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(stopped.tryReserve(1, 1).isPresent(), "The purchase should be granted locally");
+        }
+        stopped.stop();
+
+        // After the restart the reservations are reconciled before anything is allotted
+        var restarted = node(0, stock, refused);
+        try {
+            restarted.reconcile();
+            Assertions.assertEquals(90, stock.get(), "The replayed reservations should be reconciled");
+
+            int granted = 0;
+            while (restarted.tryReserve(1, 1).isPresent()) {
+                granted++;
+            }
+            // The share of the stock it saw after reconciling, less what it sold before the restart
+            Assertions.assertEquals(27 - 10, granted, "The replayed units should count against the allotment");
+            Assertions.assertEquals(0, refused.get(), "No reconciliation should be refused");
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    private StockReservationService node(int index, AtomicInteger stock, AtomicInteger refused) throws IOException {
+        var properties = new InventoryManagerProperties();
+        var reservations = properties.getReservations();
+        reservations.setEnabled(true);
+        reservations.setAllotmentFraction(0.3);
+        reservations.setMaxAllotment(STOCK);
+        // Reconciliation is driven by the test
+        reservations.setReconcileInterval(Duration.ofHours(1));
+        reservations.setLedgerPath(directory.resolve("node-" + index + ".ledger").toString());
+
+        var cache = new InventoryRecordCache(event -> {
+        });
+        cache.put(record(stock.get()));
+
+        var node = new StockReservationService(cache, properties);
+        node.start();
+        node.setReconciler((productId, quantity) -> {
+            if (stock.get() < quantity) {
+                refused.incrementAndGet();
+                return Optional.empty();
+            }
+            // The node learns the upstream quantity, which still counts what the other nodes have not reconciled
+            var record = record(stock.addAndGet(-quantity));
+            cache.put(record);
+            return Optional.of(record);
+        });
+        return node;
+    }
+
+    private static InventoryRecord record(int quantity) {
+        return new InventoryRecord(1, quantity, "Product 1", "Category");
+    }
+}
@@ -0,0 +1,113 @@
+package com.coloza.demo.springtest.reservation;
+
+import com.coloza.demo.springtest.cache.InventoryRecordCache;
+import com.coloza.demo.springtest.service.InventoryService;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "inventoryManager.reservations.enabled=true",
+        "inventoryManager.reservations.allotmentFraction=0.1",
+        "inventoryManager.reservations.reconcileInterval=1s"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class StockReservationServiceTest {
+
+    private static final Path LEDGER = Path.of(System.getProperty("java.io.tmpdir"),
+            "stock-reservation-service-test.ledger");
+
+    @DynamicPropertySource
+    static void ledgerPath(DynamicPropertyRegistry registry) {
+        registry.add("inventoryManager.reservations.ledgerPath", LEDGER::toString);
+    }
+
+    @Autowired
+    private InventoryService service;
+
+    @Autowired
+    private StockReservationService reservations;
+
+    @Autowired
+    private InventoryRecordCache cache;
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void beforeEach() {
+        // Start the WireMock Server, which loads the stubs in src/test/resources/mappings
+        wireMockServer = new WireMockServer(10000);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        wireMockServer.stop();
+        Files.deleteIfExists(LEDGER);
+    }
+
+    @Test
+    void testPurchasesAreGrantedLocallyAndReconciledTogether() throws InterruptedException {
+        // Learn the upstream stock of 500, which allots 50 units to this node
+        service.getInventoryRecord(1);
+
+        for (int i = 1; i <= 3; i++) {
+            var inventoryRecord = service.purchaseProduct(1, 2);
+            Assertions.assertTrue(inventoryRecord.isPresent(), "The purchase should be granted locally");
+            Assertions.assertEquals(500 - 2 * i, inventoryRecord.get().getQuantity().intValue(),
+                    "The quantity should account for the local purchases");
+        }
+        Assertions.assertEquals(0, purchaseCount(), "No purchase should have gone upstream yet");
+        Assertions.assertEquals(3, reservations.getPendingReservations().size(), "Every purchase should be pending");
+        Assertions.assertEquals(494, cache.get(1).orElseThrow().getQuantity().intValue(),
+                "Readers should see the local purchases");
+
+        for (int i = 0; i < 30 && !reservations.getPendingReservations().isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        Assertions.assertTrue(reservations.getPendingReservations().isEmpty(), "The purchases should be reconciled");
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/inventory/1/purchaseRecord"))
+                .withRequestBody(equalToJson("{\"productId\": 1, \"quantityPurchased\": 6}")));
+    }
+
+    @Test
+    void testPurchaseBeyondAllotmentGoesUpstream() {
+        service.getInventoryRecord(1);
+
+        var inventoryRecord = service.purchaseProduct(1, 60);
+        Assertions.assertTrue(inventoryRecord.isPresent(), "The purchase should succeed upstream");
+        Assertions.assertEquals(495, inventoryRecord.get().getQuantity().intValue(),
+                "The record should come from the Inventory Manager");
+        Assertions.assertEquals(1, purchaseCount(), "The purchase should have gone upstream synchronously");
+        Assertions.assertTrue(reservations.getPendingReservations().isEmpty(), "Nothing should be reserved");
+    }
+
+    @Test
+    void testPurchaseOfUnknownStockGoesUpstream() {
+        var inventoryRecord = service.purchaseProduct(1, 5);
+        Assertions.assertTrue(inventoryRecord.isPresent(), "The purchase should succeed upstream");
+        Assertions.assertEquals(1, purchaseCount(), "Without a known record nothing can be allotted");
+    }
+
+    private int purchaseCount() {
+        return wireMockServer.countRequestsMatching(
+                postRequestedFor(urlEqualTo("/inventory/1/purchaseRecord")).build()).getCount();
+    }
+}
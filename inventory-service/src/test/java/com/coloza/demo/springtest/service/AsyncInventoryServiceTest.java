@@ -0,0 +1,71 @@
+package com.coloza.demo.springtest.service;
+
+import com.coloza.demo.springtest.upstream.UpstreamUnavailableException;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.ExecutionException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:test.properties")
+class AsyncInventoryServiceTest {
+
+    @Autowired
+    private AsyncInventoryService service;
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void beforeEach() {
+        // Start the WireMock Server, which loads the stubs in src/test/resources/mappings
+        wireMockServer = new WireMockServer(10000);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    void afterEach() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void testGetInventoryRecordSuccess() {
+        var record = service.getInventoryRecord(1).join();
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+
+        // Validate the contents of the response
+        Assertions.assertEquals(500, record.get().getQuantity().intValue(), "The quantity should be 500");
+        Assertions.assertEquals("Super Great Product", record.get().getProductName());
+    }
+
+    @Test
+    void testGetInventoryRecordNotFound() {
+        var record = service.getInventoryRecord(2).join();
+        Assertions.assertFalse(record.isPresent(), "InventoryRecord should not be present");
+    }
+
+    @Test
+    void testPurchaseProductSuccess() {
+        var record = service.purchaseProduct(1, 5).join();
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+
+        // Validate the contents of the response
+        Assertions.assertEquals(495, record.get().getQuantity().intValue(), "The quantity should be 495");
+    }
+
+    @Test
+    void testPurchaseProductUpstreamFailure() {
+        wireMockServer.stubFor(post("/inventory/3/purchaseRecord")
+                .willReturn(aResponse().withStatus(500)));
+
+        var e = Assertions.assertThrows(ExecutionException.class, () -> service.purchaseProduct(3, 5).get());
+        Assertions.assertInstanceOf(UpstreamUnavailableException.class, e.getCause());
+    }
+}
@@ -0,0 +1,59 @@
+package com.coloza.demo.springtest.service;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "inventoryManager.baseUrls=http://localhost:10001/inventory,http://localhost:10002/inventory,http://localhost:10003/inventory",
+        "inventoryManager.loadBalancing.consistentHashing=true"
+})
+class InventoryServiceConsistentHashingTest {
+
+    @Autowired
+    private InventoryService service;
+
+    private final WireMockServer[] nodes = new WireMockServer[3];
+
+    @BeforeEach
+    void beforeEach() {
+        // Start three WireMock Servers, each serving the stubs in src/test/resources/mappings
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new WireMockServer(10001 + i);
+            nodes[i].start();
+        }
+    }
+
+    @AfterEach
+    void afterEach() {
+        for (var node : nodes) {
+            node.stop();
+        }
+    }
+
+    @Test
+    void testProductIsPinnedToOneNode() {
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(service.getInventoryRecord(1).isPresent(), "InventoryRecord should be present");
+        }
+
+        var nodesUsed = 0;
+        for (var node : nodes) {
+            var count = node.countRequestsMatching(getRequestedFor(urlEqualTo("/inventory/1")).build()).getCount();
+            if (count > 0) {
+                nodesUsed++;
+                Assertions.assertEquals(10, count, "Every request for the product should reach the same node");
+            }
+        }
+        Assertions.assertEquals(1, nodesUsed, "Only one node should serve the product");
+    }
+}
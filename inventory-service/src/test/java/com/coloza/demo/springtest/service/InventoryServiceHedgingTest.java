@@ -0,0 +1,98 @@
+package com.coloza.demo.springtest.service;
+
+import com.coloza.demo.springtest.upstream.RequestHedging;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "inventoryManager.hedging.enabled=true",
+        "inventoryManager.hedging.initialDelay=500ms",
+        "inventoryManager.hedging.budgetPercent=100"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class InventoryServiceHedgingTest {
+
+    @Autowired
+    private InventoryService service;
+
+    @Autowired
+    private RequestHedging hedging;
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void beforeEach() {
+        // Start the WireMock Server
+        wireMockServer = new WireMockServer(10000);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    void afterEach() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void testSlowGetIsHedged() {
+        // The first request is slow, any request after it is fast
+        wireMockServer.stubFor(get(urlEqualTo("/inventory/1"))
+                .inScenario("hedging")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("fast")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(2000)
+                        .withBodyFile("json/inventory-response.json")));
+        wireMockServer.stubFor(get(urlEqualTo("/inventory/1"))
+                .inScenario("hedging")
+                .whenScenarioStateIs("fast")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("json/inventory-response.json")));
+
+        var start = System.currentTimeMillis();
+        var record = service.getInventoryRecord(1);
+        var elapsed = System.currentTimeMillis() - start;
+
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+        Assertions.assertTrue(elapsed < 1500, "The hedged request should answer before the slow one, took " + elapsed);
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/inventory/1")));
+        Assertions.assertEquals(1, hedging.getStatus().getHedgesWon().longValue(), "The hedge should have won");
+    }
+
+    @Test
+    void testFastGetIsNotHedged() {
+        var record = service.getInventoryRecord(1);
+
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/inventory/1")));
+    }
+
+    @Test
+    void testPurchaseIsNeverHedged() {
+        wireMockServer.stubFor(post("/inventory/1/purchaseRecord")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(300)
+                        .withBodyFile("json/inventory-response-after-post.json")));
+
+        var record = service.purchaseProduct(1, 5);
+
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/inventory/1/purchaseRecord")));
+    }
+}
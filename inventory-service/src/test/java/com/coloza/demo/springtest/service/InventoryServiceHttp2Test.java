@@ -0,0 +1,85 @@
+package com.coloza.demo.springtest.service;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "inventoryManager.httpVersion=HTTP_2"
+})
+class InventoryServiceHttp2Test {
+
+    @Autowired
+    private InventoryService service;
+
+    @Autowired
+    private AsyncInventoryService asyncService;
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void beforeEach() {
+        // Start the WireMock Server, which accepts h2c upgrades
+        wireMockServer = new WireMockServer(10000);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    void afterEach() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void testGetInventoryRecordOverHttp2() {
+        var record = service.getInventoryRecord(1);
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+        Assertions.assertEquals(500, record.get().getQuantity().intValue(), "The quantity should be 500");
+
+        Assertions.assertFalse(service.getInventoryRecord(2).isPresent(), "InventoryRecord should not be present");
+        assertServedOverHttp2(RequestMethod.GET);
+    }
+
+    @Test
+    void testPurchaseProductOverHttp2() {
+        // The GET opens the HTTP/2 connection that the purchase then shares
+        Assertions.assertTrue(service.getInventoryRecord(1).isPresent(), "InventoryRecord should be present");
+        var record = service.purchaseProduct(1, 5);
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+        Assertions.assertEquals(495, record.get().getQuantity().intValue(), "The quantity should be 495");
+        assertServedOverHttp2(RequestMethod.POST);
+    }
+
+    @Test
+    void testAsyncGetInventoryRecordOverHttp2() {
+        var record = asyncService.getInventoryRecord(1).join();
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+        Assertions.assertEquals(500, record.get().getQuantity().intValue(), "The quantity should be 500");
+
+        Assertions.assertFalse(asyncService.getInventoryRecord(2).join().isPresent(),
+                "InventoryRecord should not be present");
+        assertServedOverHttp2(RequestMethod.GET);
+    }
+
+    /**
+     * Asserts that WireMock served a request with the specified method over HTTP/2. The first request to a node
+     * carries the h2c upgrade and may be logged as HTTP/1.1, so the tests make at least two.
+     */
+    private void assertServedOverHttp2(RequestMethod method) {
+        var protocols = wireMockServer.getAllServeEvents().stream()
+                .map(ServeEvent::getRequest)
+                .filter(request -> request.getMethod().equals(method))
+                .map(LoggedRequest::getProtocol)
+                .toList();
+        Assertions.assertTrue(protocols.stream().anyMatch(protocol -> protocol.startsWith("HTTP/2")),
+                "A " + method + " request should have been served over HTTP/2, got " + protocols);
+    }
+}
@@ -0,0 +1,100 @@
+package com.coloza.demo.springtest.service;
+
+import com.coloza.demo.springtest.upstream.UpstreamLoadBalancer;
+import com.coloza.demo.springtest.upstream.UpstreamUnavailableException;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.http.Fault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "inventoryManager.baseUrls=http://localhost:10001/inventory,http://localhost:10002/inventory",
+        "inventoryManager.fallbackToCache=false",
+        "inventoryManager.circuitBreaker.minimumCalls=100",
+        "inventoryManager.loadBalancing.ejectAfterFailures=2",
+        "inventoryManager.loadBalancing.ejectionDuration=500ms"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class InventoryServiceLoadBalancingTest {
+
+    @Autowired
+    private InventoryService service;
+
+    @Autowired
+    private UpstreamLoadBalancer loadBalancer;
+
+    private WireMockServer node1;
+
+    private WireMockServer node2;
+
+    @BeforeEach
+    void beforeEach() {
+        // Start two WireMock Servers, each serving the stubs in src/test/resources/mappings
+        node1 = new WireMockServer(10001);
+        node1.start();
+        node2 = new WireMockServer(10002);
+        node2.start();
+    }
+
+    @AfterEach
+    void afterEach() {
+        node1.stop();
+        node2.stop();
+    }
+
+    @Test
+    void testRequestsAreSpreadAcrossNodes() {
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertTrue(service.getInventoryRecord(1).isPresent(), "InventoryRecord should be present");
+        }
+
+        var node1Requests = node1.countRequestsMatching(getRequestedFor(urlEqualTo("/inventory/1")).build()).getCount();
+        var node2Requests = node2.countRequestsMatching(getRequestedFor(urlEqualTo("/inventory/1")).build()).getCount();
+        Assertions.assertEquals(20, node1Requests + node2Requests, "Every request should reach a node");
+        Assertions.assertTrue(node1Requests > 0 && node2Requests > 0, "Both nodes should receive requests");
+    }
+
+    @Test
+    void testFailingNodeIsEjectedAndRestored() throws Exception {
+        node2.stubFor(get(urlEqualTo("/inventory/1"))
+                .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+
+        // Keep calling until node 2 has failed often enough to be ejected
+        for (int i = 0; i < 20 && !loadBalancer.getStatus().get(1).getEjected(); i++) {
+            try {
+                service.getInventoryRecord(1);
+            } catch (UpstreamUnavailableException e) {
+                // Expected whenever node 2 is chosen
+            }
+        }
+        Assertions.assertTrue(loadBalancer.getStatus().get(1).getEjected(), "Node 2 should be ejected");
+
+        // While ejected, every request goes to node 1 and succeeds
+        node2.resetRequests();
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(service.getInventoryRecord(1).isPresent(), "InventoryRecord should be present");
+        }
+        node2.verify(0, getRequestedFor(urlEqualTo("/inventory/1")));
+
+        // Once node 2 recovers and its ejection expires, a probe restores it
+        node2.stubFor(get(urlEqualTo("/inventory/1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("json/inventory-response.json")));
+        Thread.sleep(600);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(service.getInventoryRecord(1).isPresent(), "InventoryRecord should be present");
+        }
+        Assertions.assertFalse(loadBalancer.getStatus().get(1).getEjected(), "Node 2 should be restored");
+    }
+}
@@ -0,0 +1,82 @@
+package com.coloza.demo.springtest.service;
+
+import com.coloza.demo.springtest.cache.ProductMetadataCache;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "inventoryManager.metadata.enabled=true",
+        "inventoryManager.metadata.stockPath=/stock"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class InventoryServiceMetadataTest {
+
+    @Autowired
+    private InventoryService service;
+
+    @Autowired
+    private AsyncInventoryService asyncService;
+
+    @Autowired
+    private ProductMetadataCache metadataCache;
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void beforeEach() {
+        // Start the WireMock Server, which loads the stubs in src/test/resources/mappings
+        wireMockServer = new WireMockServer(10000);
+        wireMockServer.start();
+        wireMockServer.stubFor(get(urlEqualTo("/inventory/1/stock"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBody("{\"productId\": 1, \"quantity\": 42}")));
+    }
+
+    @AfterEach
+    void afterEach() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void testStockRefreshReadsOnlyTheQuantity() {
+        var first = service.getInventoryRecord(1);
+        Assertions.assertTrue(first.isPresent(), "InventoryRecord should be present");
+        Assertions.assertEquals(1, metadataCache.size(), "The metadata should be cached");
+
+        var second = service.getInventoryRecord(1);
+        Assertions.assertTrue(second.isPresent(), "InventoryRecord should be present");
+        Assertions.assertEquals(42, second.get().getQuantity().intValue(), "The quantity should come from /stock");
+        Assertions.assertEquals("Super Great Product", second.get().getProductName(),
+                "The name should come from the cache");
+        Assertions.assertSame(first.get().getProductCategory(), second.get().getProductCategory(),
+                "The category string should be shared");
+
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/inventory/1")));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/inventory/1/stock")));
+    }
+
+    @Test
+    void testAsyncStockRefreshReadsOnlyTheQuantity() {
+        service.purchaseProduct(1, 5);
+
+        // The purchase response carried the metadata, so the next read only needs the stock level
+        var record = asyncService.getInventoryRecord(1).join();
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+        Assertions.assertEquals(42, record.get().getQuantity().intValue(), "The quantity should come from /stock");
+        Assertions.assertEquals("Great Products", record.get().getProductCategory(),
+                "The category should come from the cache");
+        wireMockServer.verify(0, getRequestedFor(urlEqualTo("/inventory/1")));
+    }
+}
@@ -0,0 +1,83 @@
+package com.coloza.demo.springtest.service;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:test.properties")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class InventoryServiceMetricsTest {
+
+    @Autowired
+    private InventoryService service;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void beforeEach() {
+        // Start the WireMock Server, which loads the stubs in src/test/resources/mappings
+        wireMockServer = new WireMockServer(10000);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    void afterEach() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void testUpstreamCallsAreMeasured() {
+        service.getInventoryRecord(1);
+        service.getInventoryRecord(2);
+        service.purchaseProduct(1, 5);
+
+        Assertions.assertEquals(2, registry.get("inventory.upstream.latency").tag("operation", "get").timer().count(),
+                "Every GET should be timed");
+        Assertions.assertEquals(1, registry.get("inventory.upstream.latency").tag("operation", "purchase").timer()
+                .count(), "Every purchase should be timed");
+        Assertions.assertEquals(1, registry.get("inventory.upstream.responses")
+                .tags("operation", "get", "status", "2xx").counter().count(), "The found record should count as 2xx");
+        Assertions.assertEquals(1, registry.get("inventory.upstream.responses")
+                .tags("operation", "get", "status", "4xx").counter().count(), "The missing record should count as 4xx");
+        Assertions.assertTrue(registry.get("inventory.upstream.bytes")
+                        .tags("operation", "purchase", "direction", "sent").summary().totalAmount() > 0,
+                "The purchase body should be counted");
+        Assertions.assertTrue(registry.get("inventory.upstream.bytes")
+                        .tags("operation", "get", "direction", "received").summary().totalAmount() > 0,
+                "The record body should be counted");
+        Assertions.assertEquals(3, registry.get("inventory.upstream.bulkhead.wait").timers().stream()
+                .mapToLong(timer -> timer.count()).sum(), "Every call should record its wait for a slot");
+    }
+
+    @Test
+    void testMetricsAreExported() throws Exception {
+        service.getInventoryRecord(1);
+
+        mockMvc.perform(get("/actuator/metrics/inventory.upstream.latency").param("tag", "operation:get"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].statistic", is("COUNT")))
+                .andExpect(jsonPath("$.measurements[0].value", is(1.0)));
+    }
+}
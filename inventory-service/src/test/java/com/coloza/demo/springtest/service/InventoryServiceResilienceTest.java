@@ -0,0 +1,116 @@
+package com.coloza.demo.springtest.service;
+
+import com.coloza.demo.springtest.upstream.CircuitBreaker;
+import com.coloza.demo.springtest.upstream.UpstreamOperation;
+import com.coloza.demo.springtest.upstream.UpstreamResilience;
+import com.coloza.demo.springtest.upstream.UpstreamUnavailableException;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.http.Fault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "inventoryManager.readTimeout=200ms",
+        "inventoryManager.circuitBreaker.slidingWindowSize=4",
+        "inventoryManager.circuitBreaker.minimumCalls=2",
+        "inventoryManager.circuitBreaker.openDuration=500ms",
+        "inventoryManager.circuitBreaker.halfOpenCalls=1"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class InventoryServiceResilienceTest {
+
+    @Autowired
+    private InventoryService service;
+
+    @Autowired
+    private UpstreamResilience resilience;
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void beforeEach() {
+        // Start the WireMock Server
+        wireMockServer = new WireMockServer(10000);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    void afterEach() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void testSlowUpstreamTimesOut() {
+        wireMockServer.stubFor(get(urlEqualTo("/inventory/3"))
+                .willReturn(aResponse().withStatus(200).withFixedDelay(1000)));
+
+        Assertions.assertThrows(UpstreamUnavailableException.class, () -> service.getInventoryRecord(3),
+                "A response slower than the read timeout should fail");
+    }
+
+    @Test
+    void testCircuitBreakerOpensAndFailsFast() throws Exception {
+        wireMockServer.stubFor(get(urlEqualTo("/inventory/3"))
+                .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+
+        // Two failures reach the minimum number of calls with a 100% failure rate
+        Assertions.assertThrows(UpstreamUnavailableException.class, () -> service.getInventoryRecord(3));
+        Assertions.assertThrows(UpstreamUnavailableException.class, () -> service.getInventoryRecord(3));
+        Assertions.assertEquals(CircuitBreaker.State.OPEN,
+                resilience.getCircuitBreaker(UpstreamOperation.GET).getState(), "The breaker should be open");
+
+        // While open, calls are rejected without reaching the Inventory Manager
+        Assertions.assertThrows(UpstreamUnavailableException.class, () -> service.getInventoryRecord(3));
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/inventory/3")));
+        Assertions.assertEquals(1, resilience.getCircuitBreaker(UpstreamOperation.GET).getRejectedCalls());
+
+        // Purchases are guarded by their own breaker
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED,
+                resilience.getCircuitBreaker(UpstreamOperation.PURCHASE).getState(),
+                "The purchase breaker should not be affected");
+
+        // Once the open duration has passed, a successful trial call closes the breaker
+        wireMockServer.stubFor(get(urlEqualTo("/inventory/3"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("json/inventory-response.json")));
+        Thread.sleep(600);
+        Assertions.assertTrue(service.getInventoryRecord(3).isPresent(), "The trial call should succeed");
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED,
+                resilience.getCircuitBreaker(UpstreamOperation.GET).getState(), "The breaker should be closed");
+    }
+
+    @Test
+    void testFallbackToCachedRecord() {
+        // Prime the cache with a successful read
+        var record = service.getInventoryRecord(1);
+        Assertions.assertTrue(record.isPresent(), "InventoryRecord should be present");
+
+        // Then make the Inventory Manager fail
+        wireMockServer.stubFor(get(urlEqualTo("/inventory/1"))
+                .willReturn(aResponse().withStatus(503)));
+
+        var cachedRecord = service.getInventoryRecord(1);
+        Assertions.assertTrue(cachedRecord.isPresent(), "The cached InventoryRecord should be returned");
+        Assertions.assertEquals(500, cachedRecord.get().getQuantity().intValue(), "The quantity should be 500");
+    }
+
+    @Test
+    void testPurchaseFailsFastWithoutFallback() {
+        wireMockServer.stubFor(post("/inventory/1/purchaseRecord")
+                .willReturn(aResponse().withFault(Fault.EMPTY_RESPONSE)));
+
+        Assertions.assertThrows(UpstreamUnavailableException.class, () -> service.purchaseProduct(1, 5),
+                "A failed purchase should never be answered from the cache");
+    }
+}
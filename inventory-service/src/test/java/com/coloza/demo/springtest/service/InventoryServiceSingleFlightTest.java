@@ -0,0 +1,99 @@
+package com.coloza.demo.springtest.service;
+
+import com.coloza.demo.springtest.model.InventoryRecord;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:test.properties")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class InventoryServiceSingleFlightTest {
+    private static final int CALLERS = 20;
+
+    @Autowired
+    private InventoryService service;
+
+    @Autowired
+    private AsyncInventoryService asyncService;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void beforeEach() {
+        // Start the WireMock Server with a lookup slow enough for every caller to arrive while it is in flight
+        wireMockServer = new WireMockServer(10000);
+        wireMockServer.start();
+        wireMockServer.stubFor(get(urlEqualTo("/inventory/1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withBodyFile("json/inventory-response.json")));
+    }
+
+    @AfterEach
+    void afterEach() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneUpstreamCall() throws Exception {
+        var start = new CountDownLatch(1);
+        var results = new ArrayList<CompletableFuture<Integer>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return service.getInventoryRecord(1).orElseThrow().getQuantity();
+                }, executor));
+            }
+            start.countDown();
+            for (var result : results) {
+                Assertions.assertEquals(500, result.get().intValue(), "Every caller should get the record");
+            }
+        }
+
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/inventory/1")));
+        Assertions.assertEquals(CALLERS - 1, collapsedCalls(), "Every other caller should have been saved a call");
+    }
+
+    @Test
+    void testConcurrentAsyncLookupsShareOneUpstreamCall() {
+        var results = new ArrayList<CompletableFuture<Optional<InventoryRecord>>>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(asyncService.getInventoryRecord(1));
+        }
+        results.forEach(result -> Assertions.assertTrue(result.join().isPresent(),
+                "Every caller should get the record"));
+
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/inventory/1")));
+        Assertions.assertEquals(CALLERS - 1, collapsedCalls(), "Every other caller should have been saved a call");
+    }
+
+    private double collapsedCalls() {
+        return registry.get("inventory.upstream.collapsed").tag("operation", "get").counter().count();
+    }
+}
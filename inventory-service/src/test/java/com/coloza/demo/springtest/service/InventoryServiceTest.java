@@ -1,5 +1,6 @@
 package com.coloza.demo.springtest.service;
 
+import com.coloza.demo.springtest.model.PurchaseRecord;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -9,6 +10,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
 
+import java.util.List;
+
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
 @SpringBootTest
@@ -74,4 +77,22 @@ class InventoryServiceTest {
         Assertions.assertEquals(495, record.get().getQuantity().intValue(),
                 "The quantity should be 495");
     }
+
+    @Test
+    void testPurchaseProductsReportsEachItem() {
+        var results = service.purchaseProducts(List.of(
+                new PurchaseRecord(1, 5),
+                new PurchaseRecord(2, 5),
+                new PurchaseRecord(1, 0)));
+        Assertions.assertEquals(3, results.size(), "There should be one result per item");
+
+        Assertions.assertEquals(200, results.get(0).getStatus().intValue(), "The first item should succeed");
+        Assertions.assertEquals(495, results.get(0).getInventoryRecord().getQuantity().intValue(),
+                "The quantity should be 495");
+        Assertions.assertEquals(404, results.get(1).getStatus().intValue(), "The unknown product should fail alone");
+        Assertions.assertEquals(400, results.get(2).getStatus().intValue(), "The invalid quantity should be rejected");
+        Assertions.assertEquals(1, wireMockServer.countRequestsMatching(
+                postRequestedFor(urlEqualTo("/inventory/1/purchaseRecord")).build()).getCount(),
+                "The invalid item should not be sent upstream");
+    }
 }
@@ -0,0 +1,109 @@
+package com.coloza.demo.springtest.stream;
+
+import com.coloza.demo.springtest.service.InventoryService;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:test.properties", properties = {
+        "inventoryManager.stream.pollInterval=200ms",
+        "inventoryManager.cache.ttl=1m"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class InventoryStockStreamTest {
+
+    @Autowired
+    private InventoryStockStream stream;
+
+    @Autowired
+    private InventoryService service;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void beforeEach() {
+        // Start the WireMock Server, which loads the stubs in src/test/resources/mappings
+        wireMockServer = new WireMockServer(10000);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    void afterEach() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void testWatchersShareOnePoller() throws Exception {
+        var emitters = new ArrayList<SseEmitter>();
+        for (int i = 0; i < 100; i++) {
+            emitters.add(stream.subscribe(List.of(1)));
+        }
+        Assertions.assertEquals(100, stream.getSubscriberCount(1), "Every stream should be counted");
+
+        Thread.sleep(1000);
+
+        // One poll every 200ms, not one per watcher
+        var polls = wireMockServer.countRequestsMatching(getRequestedFor(urlEqualTo("/inventory/1")).build()).getCount();
+        Assertions.assertTrue(polls <= 7, "Watchers should share a single poller, but saw " + polls + " polls");
+
+        // Once every watcher has gone, polling stops
+        emitters.forEach(emitter -> stream.release(emitter, Set.of(1)));
+        Assertions.assertEquals(0, stream.getSubscriberCount(1), "No stream should be left");
+        wireMockServer.resetRequests();
+        Thread.sleep(500);
+        wireMockServer.verify(0, getRequestedFor(urlEqualTo("/inventory/1")));
+    }
+
+    @Test
+    void testPollsBypassTheCacheTtl() throws Exception {
+        var emitter = stream.subscribe(List.of(1));
+        Thread.sleep(1000);
+
+        // Every poll asks the Inventory Manager, although the first record stays fresh for a minute
+        var polls = wireMockServer.countRequestsMatching(getRequestedFor(urlEqualTo("/inventory/1")).build()).getCount();
+        Assertions.assertTrue(polls >= 3, "Every poll should reach the Inventory Manager, but saw " + polls);
+        stream.release(emitter, Set.of(1));
+    }
+
+    @Test
+    void testStreamReceivesPolledAndPurchasedRecords() throws Exception {
+        var mvcResult = mockMvc.perform(get("/inventory/stream").param("ids", "1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // The poller fetches the current record
+        Thread.sleep(500);
+        var content = mvcResult.getResponse().getContentAsString();
+        Assertions.assertTrue(content.contains("event:inventory"), "An inventory event should be streamed");
+        Assertions.assertTrue(content.contains("\"quantity\":500"), "The polled record should be streamed");
+
+        // A purchase is pushed straight away, without waiting for the next poll
+        service.purchaseProduct(1, 5);
+        Thread.sleep(100);
+        content = mvcResult.getResponse().getContentAsString();
+        Assertions.assertTrue(content.contains("\"quantity\":495"), "The purchased record should be streamed");
+    }
+}
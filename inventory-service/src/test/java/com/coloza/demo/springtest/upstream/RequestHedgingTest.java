@@ -0,0 +1,48 @@
+package com.coloza.demo.springtest.upstream;
+
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class RequestHedgingTest {
+
+    @Test
+    void testCancelledAttemptsKeepTheDelay() {
+        var properties = new InventoryManagerProperties();
+        var hedgingProperties = properties.getHedging();
+        hedgingProperties.setEnabled(true);
+        hedgingProperties.setInitialDelay(Duration.ofMillis(20));
+        hedgingProperties.setMinDelay(Duration.ofMillis(1));
+        hedgingProperties.setBudgetPercent(100);
+        var hedging = new RequestHedging(properties);
+
+        try {
+            // Every primary is slow and every hedge is fast, so every hedge wins
+            for (int i = 0; i < 120; i++) {
+                var attempts = new AtomicInteger();
+                var result = hedging.execute(() -> attempts.incrementAndGet() == 1 ? slow() : "fast");
+                Assertions.assertEquals("fast", result, "The hedge should answer");
+            }
+
+            // The cancelled primaries took at least the delay, so the delay does not drift down to the minimum
+            var delay = TimeUnit.NANOSECONDS.toMillis(hedging.getDelayNanos());
+            Assertions.assertTrue(delay >= 10, "The hedge delay should not drift down, was " + delay + " ms");
+            Assertions.assertEquals(120, hedging.getStatus().getHedgesWon().longValue(), "Every hedge should win");
+        } finally {
+            hedging.shutdown();
+        }
+    }
+
+    private static String slow() {
+        try {
+            Thread.sleep(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "slow";
+    }
+}
@@ -0,0 +1,50 @@
+package com.coloza.demo.springtest.upstream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class SingleFlightTest {
+
+    @Test
+    void testErrorReleasesWaitingCallers() throws Exception {
+        var shared = new CountDownLatch(1);
+        var singleFlight = new SingleFlight<Integer, String>(shared::countDown);
+        var started = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var first = executor.submit(() -> singleFlight.execute(1, () -> {
+                started.countDown();
+                await(shared);
+                throw new StackOverflowError("test");
+            }));
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS), "The first call should start");
+            var second = executor.submit(() -> singleFlight.execute(1, () -> "not called"));
+
+            // Both callers fail with the Error instead of the second one waiting forever
+            assertFailsWithError(first);
+            assertFailsWithError(second);
+        }
+        Assertions.assertEquals(0, singleFlight.size(), "Nothing should be left in flight");
+
+        Assertions.assertEquals("ok", singleFlight.execute(1, () -> "ok"), "The next call should be made");
+    }
+
+    private static void assertFailsWithError(Future<String> call) {
+        var e = Assertions.assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(StackOverflowError.class, e.getCause());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
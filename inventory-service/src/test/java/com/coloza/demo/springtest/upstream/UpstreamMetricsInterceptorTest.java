@@ -0,0 +1,46 @@
+package com.coloza.demo.springtest.upstream;
+
+import com.coloza.demo.springtest.config.InventoryManagerProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class UpstreamMetricsInterceptorTest {
+
+    @Test
+    void testResponseIsClosedWhenItsBodyCannotBeRead() throws IOException {
+        var registry = new SimpleMeterRegistry();
+        var interceptor = new UpstreamMetricsInterceptor(new UpstreamMetrics(registry,
+                new InventoryManagerProperties()));
+
+        var request = mock(HttpRequest.class);
+        doReturn(HttpMethod.GET).when(request).getMethod();
+        doReturn(URI.create("http://localhost:10000/inventory/1")).when(request).getURI();
+        var response = mock(ClientHttpResponse.class);
+        doReturn(HttpStatus.OK).when(response).getStatusCode();
+        doThrow(new IOException("Connection reset")).when(response).getBody();
+        var body = new byte[0];
+        var execution = mock(ClientHttpRequestExecution.class);
+        doReturn(response).when(execution).execute(request, body);
+
+        Assertions.assertThrows(IOException.class, () -> interceptor.intercept(request, body, execution));
+
+        // The connection is released, and the failure is recorded
+        verify(response).close();
+        Assertions.assertEquals(1, registry.get("inventory.upstream.responses").tag("status", "IO_ERROR").counter()
+                .count());
+    }
+}
@@ -2,7 +2,11 @@ package com.coloza.demo.springtest.web;
 
 import com.coloza.demo.springtest.model.InventoryRecord;
 import com.coloza.demo.springtest.model.PurchaseRecord;
+import com.coloza.demo.springtest.model.PurchaseResult;
+import com.coloza.demo.springtest.service.AsyncInventoryService;
 import com.coloza.demo.springtest.service.InventoryService;
+import com.coloza.demo.springtest.upstream.UpstreamOperation;
+import com.coloza.demo.springtest.upstream.UpstreamUnavailableException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -14,10 +18,15 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -28,6 +37,9 @@ class InventoryControllerTest {
     @MockitoBean
     private InventoryService service;
 
+    @MockitoBean
+    private AsyncInventoryService asyncService;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -69,6 +81,20 @@ class InventoryControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("GET /inventory/1 - Upstream Unavailable")
+    void testGetInventoryByIdUpstreamUnavailable() throws Exception {
+        // Set up our mocked service
+        doThrow(new UpstreamUnavailableException(UpstreamOperation.GET, "circuit breaker is open"))
+                .when(service).getInventoryRecord(1);
+
+        // Execute the GET request
+        mockMvc.perform(get("/inventory/{id}", 1))
+
+                // Validate the response code is 503 Service Unavailable
+                .andExpect(status().isServiceUnavailable());
+    }
+
     @Test
     @DisplayName("POST /inventory/purchase-record - Success")
     void testCreatePurchaseRecord() throws Exception {
@@ -96,6 +122,78 @@ class InventoryControllerTest {
                 .andExpect(jsonPath("$.productCategory", is("Great Products")));
     }
 
+    @Test
+    @DisplayName("GET /async/inventory/1 - Success")
+    void testGetInventoryByIdAsyncSuccess() throws Exception {
+        // Set up our mocked service
+        InventoryRecord mockRecord = new InventoryRecord(1, 10,
+                "Product 1", "Great Products");
+        doReturn(CompletableFuture.completedFuture(Optional.of(mockRecord))).when(asyncService).getInventoryRecord(1);
+
+        // Execute the GET request, which is handled asynchronously
+        var mvcResult = mockMvc.perform(get("/async/inventory/{id}", 1))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+
+                // Validate the response code and content type
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+
+                // Validate the headers
+                .andExpect(header().string(HttpHeaders.LOCATION, "/inventory/1"))
+
+                // Validate the returned fields
+                .andExpect(jsonPath("$.productId", is(1)))
+                .andExpect(jsonPath("$.quantity", is(10)));
+    }
+
+    @Test
+    @DisplayName("GET /async/inventory/2 - Not Found")
+    void testGetInventoryByIdAsyncNotFound() throws Exception {
+        // Set up our mocked service
+        doReturn(CompletableFuture.completedFuture(Optional.empty())).when(asyncService).getInventoryRecord(2);
+
+        // Execute the GET request, which is handled asynchronously
+        var mvcResult = mockMvc.perform(get("/async/inventory/{id}", 2))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+
+                // Validate the response code is 404 Not Found
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("POST /inventory/purchase-records - Success")
+    void testCreatePurchaseRecords() throws Exception {
+        // Setup mocked service
+        var purchaseRecords = List.of(new PurchaseRecord(1, 5), new PurchaseRecord(2, 1));
+        InventoryRecord mockRecord = new InventoryRecord(1, 10,
+                "Product 1", "Great Products");
+        doReturn(List.of(
+                new PurchaseResult(1, 5, 200, mockRecord, null),
+                new PurchaseResult(2, 1, 404, null, "The product could not be purchased")))
+                .when(service).purchaseProducts(purchaseRecords);
+
+        mockMvc.perform(post("/inventory/purchase-records")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(purchaseRecords)))
+
+                // Validate the response code and content type
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+
+                // Validate the returned fields
+                .andExpect(jsonPath("$.length()", is(2)))
+                .andExpect(jsonPath("$[0].status", is(200)))
+                .andExpect(jsonPath("$[0].inventoryRecord.quantity", is(10)))
+                .andExpect(jsonPath("$[1].productId", is(2)))
+                .andExpect(jsonPath("$[1].status", is(404)));
+    }
+
     static String asJsonString(final Object obj) {
         try {
             return new ObjectMapper().writeValueAsString(obj);
@@ -103,4 +201,15 @@ class InventoryControllerTest {
             throw new RuntimeException(e);
         }
     }
+
+    @Test
+    @DisplayName("GET /inventory/stream - Too Many Products")
+    void testStreamInventoryRecordsTooManyProducts() throws Exception {
+        var ids = IntStream.rangeClosed(1, 51).mapToObj(Integer::toString).toArray(String[]::new);
+
+        mockMvc.perform(get("/inventory/stream").param("ids", ids))
+
+                // Validate that the stream is refused before any poller is started
+                .andExpect(status().isBadRequest());
+    }
 }
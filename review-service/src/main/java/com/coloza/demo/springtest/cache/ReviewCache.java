@@ -0,0 +1,228 @@
+package com.coloza.demo.springtest.cache;
+
+import com.coloza.demo.springtest.config.ReviewProperties;
+import com.coloza.demo.springtest.model.Review;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Caches the review of each product, including the fact that a product has none. Entries are evicted by a change
+ * stream on the Reviews collection, so a write on any instance reaches every cache within milliseconds. The cache
+ * is only used while the change stream is open; whenever it is (re)opened the cache starts empty, so no event can
+ * have been missed. Enabled by setting {@code reviews.cache.enabled}.
+ */
+@Slf4j
+@Component
+public class ReviewCache {
+    private final MongoTemplate mongoTemplate;
+    private final ReviewProperties.CacheProperties properties;
+
+    // Guarded by this. Change events of updates and deletes only carry the review ID, hence the second map.
+    private final Map<Integer, Optional<Review>> reviews;
+    private final Map<String, Integer> productIds = new HashMap<>();
+
+    // Guarded by this. Incremented by every eviction, so that a lookup that raced with a write is not cached.
+    private long generation;
+
+    private volatile boolean watching;
+    private volatile boolean running;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+
+    public ReviewCache(MongoTemplate mongoTemplate, ReviewProperties properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.properties = properties.getCache();
+        this.reviews = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Optional<Review>> eldest) {
+                if (size() <= ReviewCache.this.properties.getMaxSize()) {
+                    return false;
+                }
+                eldest.getValue().ifPresent(review -> productIds.remove(review.getId()));
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Starts watching the Reviews collection once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        running = true;
+        Thread.ofVirtual().name("review-cache-watcher").start(this::watch);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        var current = cursor;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * Returns whether the cache is in use, that is whether the change stream is open.
+     *
+     * @return True if lookups are served from the cache.
+     */
+    public boolean isWatching() {
+        return watching;
+    }
+
+    /**
+     * Returns the review of the specified product from the cache, or loads and caches it.
+     *
+     * @param productId The product ID.
+     * @param loader    Loads the review from the database.
+     * @return The review of the product, or empty if it has none.
+     */
+    public Optional<Review> get(Integer productId, Function<Integer, Optional<Review>> loader) {
+        if (!watching) {
+            return loader.apply(productId);
+        }
+
+        long loadedGeneration;
+        synchronized (this) {
+            var cached = reviews.get(productId);
+            if (cached != null) {
+                return cached;
+            }
+            loadedGeneration = generation;
+        }
+
+        var review = loader.apply(productId);
+        synchronized (this) {
+            if (watching && loadedGeneration == generation) {
+                reviews.put(productId, review);
+                review.ifPresent(loaded -> productIds.put(loaded.getId(), productId));
+            }
+        }
+        return review;
+    }
+
+    /**
+     * Evicts the review of the specified product, such as after a write on this instance.
+     *
+     * @param productId The product ID.
+     */
+    public synchronized void evictProduct(Integer productId) {
+        generation++;
+        var review = reviews.remove(productId);
+        if (review != null) {
+            review.ifPresent(removed -> productIds.remove(removed.getId()));
+        }
+    }
+
+    /**
+     * Evicts the review with the specified ID.
+     *
+     * @param id The review ID.
+     */
+    public synchronized void evictReview(String id) {
+        generation++;
+        var productId = productIds.remove(id);
+        if (productId != null) {
+            reviews.remove(productId);
+        }
+    }
+
+    /**
+     * Returns the number of products whose review is cached.
+     *
+     * @return The number of cached products.
+     */
+    public synchronized int size() {
+        return reviews.size();
+    }
+
+    private synchronized void clear() {
+        generation++;
+        reviews.clear();
+        productIds.clear();
+    }
+
+    private void watch() {
+        var collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Review.class));
+        while (running) {
+            try (var stream = collection.watch().cursor()) {
+                cursor = stream;
+                clear();
+                watching = true;
+                log.info("Watching the Reviews collection; review cache enabled");
+
+                while (running && apply(stream.next())) {
+                    // Keep applying events until the stream is invalidated or closed
+                }
+            } catch (MongoException | IllegalStateException e) {
+                if (running) {
+                    log.warn("Review change stream failed; bypassing the review cache for {}",
+                            properties.getRetryInterval(), e);
+                }
+            } finally {
+                watching = false;
+                cursor = null;
+                clear();
+            }
+
+            if (running) {
+                try {
+                    Thread.sleep(properties.getRetryInterval());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts what a change event makes stale.
+     *
+     * @return False if the stream ends with this event.
+     */
+    private boolean apply(ChangeStreamDocument<Document> event) {
+        switch (event.getOperationType()) {
+            case INSERT -> {
+                // A review was created, possibly for a product cached as having none
+                var review = event.getFullDocument();
+                if (review != null && review.get("productId") instanceof Integer productId) {
+                    evictProduct(productId);
+                } else {
+                    clear();
+                }
+            }
+            case UPDATE, REPLACE, DELETE -> evictReview(toId(event.getDocumentKey().get("_id")));
+            case INVALIDATE -> {
+                clear();
+                return false;
+            }
+            default -> clear();
+        }
+        return true;
+    }
+
+    private static String toId(BsonValue id) {
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString()
+                : id.isString() ? id.asString().getValue()
+                : id.toString();
+    }
+}
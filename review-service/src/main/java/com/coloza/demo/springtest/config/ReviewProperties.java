@@ -0,0 +1,97 @@
+package com.coloza.demo.springtest.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for how reviews are stored, bound from the {@code reviews.*} properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "reviews")
+public class ReviewProperties {
+
+    private final IndexProperties indexes = new IndexProperties();
+
+    private final BucketProperties buckets = new BucketProperties();
+
+    private final CounterProperties counters = new CounterProperties();
+
+    private final IngestProperties ingest = new IngestProperties();
+
+    private final CacheProperties cache = new CacheProperties();
+
+    private final ExportProperties export = new ExportProperties();
+
+    @Data
+    public static class IndexProperties {
+        /**
+         * Whether the indexes the review queries rely on are created when the service starts.
+         */
+        private boolean createOnStartup = true;
+    }
+
+    @Data
+    public static class BucketProperties {
+        /**
+         * Whether new entries are stored in bucket documents of the ReviewBuckets collection instead of the entries
+         * array of the review. A review is moved to buckets when its product gets its next entry.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The maximum number of entries in one bucket.
+         */
+        private int size = 100;
+    }
+
+    @Data
+    public static class CounterProperties {
+        /**
+         * Whether the entry counters of reviews stored before they were maintained are filled in when the service
+         * starts.
+         */
+        private boolean backfillOnStartup = true;
+    }
+
+    @Data
+    public static class IngestProperties {
+        /**
+         * The number of lines of an import that are grouped by product and written in one bulk write.
+         */
+        private int chunkSize = 1000;
+
+        /**
+         * The maximum number of failed lines reported back for an import.
+         */
+        private int maxErrors = 100;
+    }
+
+    @Data
+    public static class CacheProperties {
+        /**
+         * Whether reviews looked up by product ID are cached in memory. The cache is kept coherent with writes from
+         * every instance by a change stream on the Reviews collection, which needs a replica set.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The maximum number of products whose review is cached; the least recently used is dropped first.
+         */
+        private int maxSize = 10000;
+
+        /**
+         * How long to wait before reopening the change stream after it failed. The cache is bypassed meanwhile.
+         */
+        private Duration retryInterval = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class ExportProperties {
+        /**
+         * The number of reviews fetched per round trip while exporting.
+         */
+        private int batchSize = 500;
+    }
+}
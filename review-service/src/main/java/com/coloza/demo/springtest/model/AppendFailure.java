@@ -0,0 +1,21 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Why the entries of a product could not all be appended to its review.
+ */
+@Data
+@AllArgsConstructor
+public class AppendFailure {
+    /**
+     * The number of entries, counted from the first, that were appended before the failure; the others were not.
+     */
+    private int applied;
+
+    /**
+     * Why the other entries could not be appended.
+     */
+    private String message;
+}
@@ -0,0 +1,21 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A line of an import that could not be stored.
+ */
+@Data
+@AllArgsConstructor
+public class ImportError {
+    /**
+     * The number of the line, starting with 1.
+     */
+    private Long line;
+
+    /**
+     * Why the line could not be stored.
+     */
+    private String message;
+}
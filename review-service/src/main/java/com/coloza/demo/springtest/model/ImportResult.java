@@ -0,0 +1,32 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of an import of review entries.
+ */
+@Data
+public class ImportResult {
+    /**
+     * The number of non-blank lines read.
+     */
+    private long lines;
+
+    /**
+     * The number of entries stored.
+     */
+    private long imported;
+
+    /**
+     * The number of lines that could not be stored.
+     */
+    private long failed;
+
+    /**
+     * The first of the lines that could not be stored; the list is capped, the failed count is not.
+     */
+    private final List<ImportError> errors = new ArrayList<>();
+}
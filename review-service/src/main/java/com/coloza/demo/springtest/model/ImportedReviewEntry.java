@@ -0,0 +1,33 @@
+package com.coloza.demo.springtest.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * A review entry to import, together with the product ID of the review to which it belongs.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImportedReviewEntry {
+    private Integer productId;
+    private String username;
+    private Date date;
+    private String review;
+
+    /**
+     * Returns the review entry to store.
+     *
+     * @return The review entry, without the product ID.
+     */
+    public ReviewEntry toEntry() {
+        return new ReviewEntry(username, date, review);
+    }
+}
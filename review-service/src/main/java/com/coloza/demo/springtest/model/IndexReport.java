@@ -0,0 +1,18 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * The indexes of the Reviews collection with their usage, the plans of the service's queries, and the indexes that
+ * could not be created.
+ */
+@Data
+@AllArgsConstructor
+public class IndexReport {
+    private List<IndexUsage> indexes;
+    private List<QueryPlan> queries;
+    private List<String> failedIndexes;
+}
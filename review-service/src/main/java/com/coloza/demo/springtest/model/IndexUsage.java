@@ -0,0 +1,19 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * How often an index of the Reviews collection has been used since the server started, as reported by $indexStats.
+ */
+@Data
+@AllArgsConstructor
+public class IndexUsage {
+    private String name;
+    private Map<String, Object> keys;
+    private Long accesses;
+    private Date since;
+}
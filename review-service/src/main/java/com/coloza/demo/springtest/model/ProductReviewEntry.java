@@ -0,0 +1,20 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * A review entry together with the product ID of the review to which it belongs.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductReviewEntry {
+    private Integer productId;
+    private String username;
+    private Date date;
+    private String review;
+}
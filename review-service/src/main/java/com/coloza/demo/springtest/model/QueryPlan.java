@@ -0,0 +1,18 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * The plan MongoDB picks for one of the queries the service runs, and whether it scans the whole collection.
+ */
+@Data
+@AllArgsConstructor
+public class QueryPlan {
+    private String query;
+    private String filter;
+    private List<String> stages;
+    private Boolean collectionScan;
+}
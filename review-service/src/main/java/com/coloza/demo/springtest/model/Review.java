@@ -5,6 +5,7 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -39,4 +40,26 @@ public class Review {
     @Builder.Default
     @Setter(AccessLevel.NONE)
     private List<ReviewEntry> entries = new ArrayList<>();
+
+    /**
+     * The number of entries of the review, maintained on every entry added.
+     */
+    private Integer entryCount;
+
+    /**
+     * The date of the latest entry of the review, maintained on every entry added.
+     */
+    private Date latestEntryDate;
+
+    /**
+     * The ID of the bucket that received the latest entry, or null if all entries are stored in this document.
+     */
+    private String latestBucket;
+
+    /**
+     * The versions at which the entries held in this document were moved to buckets. Buckets written by other moves,
+     * which did not complete, are ignored.
+     */
+    @Builder.Default
+    private List<Integer> migrations = new ArrayList<>();
 }
@@ -0,0 +1,58 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A bucket of review entries. Bucketed reviews keep their entries in a series of these documents, each holding at
+ * most a fixed number of entries, so that the review document itself stays small.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "ReviewBuckets")
+public class ReviewBucket {
+    /**
+     * The ID of the bucket.
+     */
+    @Id
+    private String id;
+
+    /**
+     * The product ID of the review to which the entries belong.
+     */
+    private Integer productId;
+
+    /**
+     * The date of the oldest entry in the bucket, which orders the buckets of a review.
+     */
+    private Date startDate;
+
+    /**
+     * The number of entries in the bucket.
+     */
+    private Integer count;
+
+    /**
+     * Whether the bucket holds entries moved from the review document.
+     */
+    private Boolean migrated;
+
+    /**
+     * The version of the review whose entries were moved to the bucket, for buckets holding entries moved from the
+     * review document. The bucket only holds entries of the review once the review has switched over to it.
+     */
+    private Integer migration;
+
+    /**
+     * The entries in the bucket, oldest first.
+     */
+    @Builder.Default
+    private List<ReviewEntry> entries = new ArrayList<>();
+}
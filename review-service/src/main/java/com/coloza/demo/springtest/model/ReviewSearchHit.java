@@ -0,0 +1,22 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * A review entry that matches a search, with the product ID of its review and the relevance of the match. The score is
+ * that of the review or bucket holding the entry, as MongoDB scores documents rather than the entries in them.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewSearchHit {
+    private Integer productId;
+    private String username;
+    private Date date;
+    private String review;
+    private Double score;
+}
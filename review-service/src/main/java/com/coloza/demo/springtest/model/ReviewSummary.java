@@ -0,0 +1,19 @@
+package com.coloza.demo.springtest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * The number of entries of the review of a product and the date of the latest one.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewSummary {
+    private Integer productId;
+    private Integer entryCount;
+    private Date latestEntryDate;
+}
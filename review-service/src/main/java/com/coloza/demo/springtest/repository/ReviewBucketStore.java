@@ -0,0 +1,361 @@
+package com.coloza.demo.springtest.repository;
+
+import com.coloza.demo.springtest.config.ReviewProperties;
+import com.coloza.demo.springtest.model.Review;
+import com.coloza.demo.springtest.model.ReviewBucket;
+import com.coloza.demo.springtest.model.ReviewEntry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Stores review entries in fixed-size bucket documents. The review document keeps the entry count and a pointer to
+ * the latest bucket, and a review's entries are its buckets' entries, oldest bucket first, followed by any entries
+ * still held in the review document.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReviewBucketStore {
+    private final MongoTemplate mongoTemplate;
+    private final ReviewProperties properties;
+
+    /**
+     * Returns whether new entries are stored in buckets.
+     *
+     * @return True if bucketed storage is enabled.
+     */
+    public boolean isEnabled() {
+        return properties.getBuckets().isEnabled();
+    }
+
+    /**
+     * Appends an entry to the latest bucket of the specified product, starting a new bucket when it is full, and
+     * updates the review summary. Entries still held in the review document are moved to buckets first.
+     *
+     * @param productId The product ID of the review.
+     * @param entry     The entry to append.
+     * @return The updated review, carrying only the appended entry.
+     */
+    public Review addEntry(Integer productId, ReviewEntry entry) {
+        migrate(productId);
+        var bucketId = push(productId, entry);
+
+        var query = Query.query(Criteria.where("productId").is(productId));
+        query.fields().exclude("entries");
+        var update = new Update()
+                .inc("version", 1)
+                .inc("entryCount", 1)
+                .max("latestEntryDate", entry.getDate())
+                .set("latestBucket", bucketId);
+        var options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+
+        Review review;
+        try {
+            review = mongoTemplate.findAndModify(query, update, options, Review.class);
+        } catch (DuplicateKeyException e) {
+            log.info("Retrying entry for product id: {} after a concurrent upsert", productId);
+            review = mongoTemplate.findAndModify(query, update, options, Review.class);
+        }
+        Objects.requireNonNull(review).getEntries().add(entry);
+        return review;
+    }
+
+    /**
+     * Appends an entry to the latest bucket of the specified product, as {@link #addEntry(Integer, ReviewEntry)}
+     * does, if its review has the expected version. The entry is appended first and the review is updated last, so
+     * that the change to the review, on which caches reload it, comes once the entry is stored. If the version no
+     * longer matches by then, the entry is removed again.
+     *
+     * @param productId       The product ID of the review.
+     * @param entry           The entry to append.
+     * @param expectedVersion The version the review must have.
+     * @return The updated review, carrying only the appended entry, or empty if the product has no review with the
+     * expected version.
+     */
+    public Optional<Review> addEntry(Integer productId, ReviewEntry entry, int expectedVersion) {
+        migrate(productId);
+
+        // A stale version is refused before anything is written; only a write that races with ours is undone
+        var query = Query.query(Criteria.where("productId").is(productId).and("version").is(expectedVersion));
+        if (!mongoTemplate.exists(query, Review.class)) {
+            return Optional.empty();
+        }
+
+        var bucketId = push(productId, entry);
+        query.fields().exclude("entries");
+        var update = new Update()
+                .inc("version", 1)
+                .inc("entryCount", 1)
+                .max("latestEntryDate", entry.getDate())
+                .set("latestBucket", bucketId);
+        var review = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                Review.class);
+        if (review == null) {
+            remove(bucketId, entry);
+            return Optional.empty();
+        }
+        review.getEntries().add(entry);
+        return Optional.of(review);
+    }
+
+    /**
+     * Adds the bucketed entries of the specified review to it.
+     *
+     * @param review The review, as stored.
+     * @return The review with all its entries.
+     */
+    public Review withEntries(Review review) {
+        if (review.getLatestBucket() != null) {
+            review.getEntries().addAll(0, findEntries(List.of(review)).getOrDefault(review.getProductId(), List.of()));
+        }
+        return review;
+    }
+
+    /**
+     * Adds the bucketed entries of the specified reviews to them, reading the buckets of all reviews in one query.
+     *
+     * @param reviews The reviews, as stored.
+     * @return The reviews with all their entries.
+     */
+    public List<Review> withEntries(List<Review> reviews) {
+        var bucketed = reviews.stream()
+                .filter(review -> review.getLatestBucket() != null)
+                .toList();
+        if (bucketed.isEmpty()) {
+            return reviews;
+        }
+        var entries = findEntries(bucketed);
+        reviews.stream()
+                .filter(review -> review.getLatestBucket() != null)
+                .forEach(review -> review.getEntries().addAll(0,
+                        entries.getOrDefault(review.getProductId(), List.of())));
+        return reviews;
+    }
+
+    /**
+     * Returns a window of the bucketed entries of the specified product. Buckets are read in order only until the
+     * window is filled.
+     *
+     * @param productId   The product ID of the review.
+     * @param migrations  The migrations the review switched over to.
+     * @param offset      The number of entries to skip.
+     * @param limit       The maximum number of entries to return.
+     * @param newestFirst Whether to count from the newest entry instead of the oldest.
+     * @return The entries in the window, in the requested order.
+     */
+    public List<ReviewEntry> findEntries(Integer productId, List<Integer> migrations, long offset, int limit,
+                                         boolean newestFirst) {
+        var direction = newestFirst ? Sort.Direction.DESC : Sort.Direction.ASC;
+        var entries = newestFirst
+                ? Aggregation.project().and(ArrayOperators.ReverseArray.reverseArrayOf("entries")).as("entries")
+                : Aggregation.project("entries");
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("productId").is(productId).andOperator(adoptedBy(migrations))),
+                Aggregation.sort(Sort.by(direction, "startDate", "_id")),
+                entries,
+                Aggregation.unwind("entries"),
+                Aggregation.skip(offset),
+                Aggregation.limit(limit),
+                Aggregation.replaceRoot("entries"));
+        return mongoTemplate.aggregate(aggregation, ReviewBucket.class, ReviewEntry.class).getMappedResults();
+    }
+
+    /**
+     * Returns the number of bucketed entries of the specified product.
+     *
+     * @param productId  The product ID of the review.
+     * @param migrations The migrations the review switched over to.
+     * @return The number of entries in its buckets.
+     */
+    public long count(Integer productId, List<Integer> migrations) {
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("productId").is(productId).andOperator(adoptedBy(migrations))),
+                Aggregation.group().sum("count").as("count"));
+        var result = mongoTemplate.aggregate(aggregation, ReviewBucket.class, Document.class).getUniqueMappedResult();
+        return result == null ? 0 : ((Number) result.get("count")).longValue();
+    }
+
+    /**
+     * Returns the aggregation stages that drop the buckets that do not hold entries of their review: those of reviews
+     * that have not been switched to buckets, and those written by a migration the review did not switch over to. A
+     * migration writes its buckets before switching the review over, so if the switch fails or the process stops in
+     * between, the buckets hold entries that are still in the review document.
+     *
+     * @return The stages to add to a pipeline over the ReviewBuckets collection.
+     */
+    public List<Document> adoptedBucketsOnly() {
+        var migration = new Document("$ifNull", Arrays.asList("$migration", null));
+        var migrations = new Document("$ifNull", List.of("$migrations", List.of()));
+        return List.of(
+                new Document("$lookup", new Document()
+                        .append("from", mongoTemplate.getCollectionName(Review.class))
+                        .append("localField", "productId")
+                        .append("foreignField", "productId")
+                        .append("let", new Document("migration", migration))
+                        .append("pipeline", List.of(
+                                new Document("$match", new Document("latestBucket", new Document("$ne", null))
+                                        .append("$expr", new Document("$or", List.of(
+                                                new Document("$eq", Arrays.asList("$$migration", null)),
+                                                new Document("$in", List.of("$$migration", migrations)))))),
+                                new Document("$project", new Document("_id", 1))))
+                        .append("as", "adoptingReviews")),
+                new Document("$match", new Document("adoptingReviews.0", new Document("$exists", true))));
+    }
+
+    /**
+     * Deletes the buckets of the specified product.
+     *
+     * @param productId The product ID of the review.
+     */
+    public void delete(Integer productId) {
+        mongoTemplate.remove(Query.query(Criteria.where("productId").is(productId)), ReviewBucket.class);
+    }
+
+    private Map<Integer, List<ReviewEntry>> findEntries(Collection<Review> reviews) {
+        var migrations = new HashMap<Integer, List<Integer>>();
+        reviews.forEach(review -> migrations.put(review.getProductId(), review.getMigrations()));
+        var query = Query.query(Criteria.where("productId").in(migrations.keySet()))
+                .with(Sort.by("productId", "startDate", "_id"));
+        var entries = new HashMap<Integer, List<ReviewEntry>>();
+        for (var bucket : mongoTemplate.find(query, ReviewBucket.class)) {
+            var adopted = migrations.get(bucket.getProductId());
+            if (bucket.getMigration() == null || adopted != null && adopted.contains(bucket.getMigration())) {
+                entries.computeIfAbsent(bucket.getProductId(), productId -> new ArrayList<>())
+                        .addAll(bucket.getEntries());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Matches the buckets that hold entries of a review with the specified migrations: the buckets entries were
+     * appended to, and those of the migrations the review switched over to.
+     */
+    private static Criteria adoptedBy(List<Integer> migrations) {
+        return new Criteria().orOperator(
+                Criteria.where("migration").exists(false),
+                Criteria.where("migration").in(migrations == null ? List.of() : migrations));
+    }
+
+    private String push(Integer productId, ReviewEntry entry) {
+        // The upsert starts a new bucket when every bucket of the product is full
+        var query = Query.query(Criteria.where("productId").is(productId)
+                        .and("count").lt(properties.getBuckets().getSize())
+                        .and("migrated").ne(true))
+                .with(Sort.by(Sort.Direction.DESC, "_id"));
+        query.fields().include("_id");
+        var update = new Update().push("entries", entry).inc("count", 1).min("startDate", entry.getDate());
+
+        var bucket = mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true), ReviewBucket.class);
+        return Objects.requireNonNull(bucket).getId();
+    }
+
+    /**
+     * Removes one occurrence of an entry appended to the specified bucket. $pull would remove every equal entry,
+     * including those appended by other writes, so the pipeline keeps the entries before and after the last one.
+     */
+    private void remove(String bucketId, ReviewEntry entry) {
+        var value = mongoTemplate.getConverter().convertToMongoType(entry);
+        var fromEnd = new Document("$indexOfArray", List.of(new Document("$reverseArray", "$entries"), value));
+        var last = new Document("$subtract", List.of(new Document("$size", "$entries"), 1));
+        var before = new Document("$subtract", List.of(last, "$$fromEnd"));
+        var update = List.of(new Document("$set", new Document()
+                .append("entries", new Document("$let", new Document()
+                        .append("vars", new Document("fromEnd", fromEnd))
+                        .append("in", new Document("$concatArrays", List.of(
+                                new Document("$slice", List.of("$entries", before)),
+                                new Document("$slice", List.of("$entries",
+                                        new Document("$multiply", List.of("$$fromEnd", -1)))))))))
+                .append("count", new Document("$subtract", List.of("$count", 1)))));
+
+        var id = ObjectId.isValid(bucketId) ? new ObjectId(bucketId) : bucketId;
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(ReviewBucket.class))
+                .updateOne(new Document("_id", id).append("entries", value), update);
+    }
+
+    /**
+     * Moves the entries held in the review document of the specified product to buckets. The buckets get IDs derived
+     * from the product and the review version, so that concurrent migrations of the same review write the same
+     * buckets, while a migration after entries were held in the document again, once bucketing was turned off and on,
+     * writes new ones. The review is only switched over if no entry was added to it in the meantime, and it records
+     * the version it was switched at. Until it is, the buckets are ignored: reads of one review only look at buckets
+     * once the review points at one and only at those of the migrations it recorded, and reads across reviews go
+     * through {@link #adoptedBucketsOnly()}.
+     */
+    private void migrate(Integer productId) {
+        var size = properties.getBuckets().getSize();
+        while (true) {
+            var review = mongoTemplate.findOne(Query.query(Criteria.where("productId").is(productId)
+                    .and("entries.0").exists(true)), Review.class);
+            if (review == null) {
+                return;
+            }
+
+            // Earlier migrations that were not switched over can no longer be, since the version has moved on
+            var version = review.getVersion();
+            mongoTemplate.remove(Query.query(Criteria.where("productId").is(productId)
+                    .and("migration").lt(version).nin(review.getMigrations())), ReviewBucket.class);
+
+            var entries = review.getEntries();
+            String bucketId = null;
+            for (int start = 0; start < entries.size(); start += size) {
+                var chunk = new ArrayList<>(entries.subList(start, Math.min(start + size, entries.size())));
+                bucketId = String.format("migrated-%d-%d-%06d", productId, version, start / size);
+                mongoTemplate.save(ReviewBucket.builder()
+                        .id(bucketId)
+                        .productId(productId)
+                        .startDate(chunk.getFirst().getDate())
+                        .count(chunk.size())
+                        .migrated(true)
+                        .migration(version)
+                        .entries(chunk)
+                        .build());
+            }
+
+            var query = Query.query(Criteria.where("_id").is(review.getId())
+                    .and("version").is(version)
+                    .and("entries.0").exists(true));
+            var update = new Update()
+                    .set("entries", List.of())
+                    .set("latestBucket", bucketId)
+                    .addToSet("migrations", version);
+            // A review without buckets holds all its entries, which may predate the counters. One with buckets
+            // already counts the entries in its document, since each of them counted itself when it was added.
+            if (review.getLatestBucket() == null) {
+                update.set("entryCount", entries.size())
+                        .set("latestEntryDate", entries.stream()
+                                .map(ReviewEntry::getDate)
+                                .filter(Objects::nonNull)
+                                .max(Comparator.naturalOrder())
+                                .orElse(null));
+            }
+            if (mongoTemplate.updateFirst(query, update, Review.class).getModifiedCount() > 0) {
+                log.info("Moved {} entries of product id: {} to buckets", entries.size(), productId);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.coloza.demo.springtest.repository;
+
+import com.coloza.demo.springtest.config.ReviewProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills in the entry counters of reviews stored before the counters were maintained.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReviewCounterBackfill {
+    private final ReviewRepository repository;
+    private final ReviewProperties properties;
+
+    /**
+     * Backfills the counters once the application is ready, in the background so that startup is not held up.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!properties.getCounters().isBackfillOnStartup()) {
+            return;
+        }
+        Thread.ofVirtual().name("review-counters").start(() -> {
+            try {
+                var updated = repository.backfillCounters();
+                log.info("Backfilled the entry counters of {} reviews", updated);
+            } catch (RuntimeException e) {
+                log.warn("Could not backfill the review entry counters", e);
+            }
+        });
+    }
+}
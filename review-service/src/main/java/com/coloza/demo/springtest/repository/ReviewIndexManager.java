@@ -0,0 +1,202 @@
+package com.coloza.demo.springtest.repository;
+
+import com.coloza.demo.springtest.config.ReviewProperties;
+import com.coloza.demo.springtest.model.IndexReport;
+import com.coloza.demo.springtest.model.IndexUsage;
+import com.coloza.demo.springtest.model.QueryPlan;
+import com.coloza.demo.springtest.model.Review;
+import com.coloza.demo.springtest.model.ReviewBucket;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the indexes the review queries rely on and reports how they are used.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReviewIndexManager {
+    /**
+     * Indexes that another index has replaced, dropped before the indexes are created. A collection can have only one
+     * text index, and the stemmed entries_review_text matched words that the entry filter of the search did not.
+     */
+    private static final List<String> OBSOLETE_INDEXES = List.of("entries_review_text");
+
+    private final MongoTemplate mongoTemplate;
+    private final ReviewProperties properties;
+
+    // The indexes the last ensureIndexes could not create
+    private volatile List<String> failedIndexes = List.of();
+
+    /**
+     * Creates the indexes once the application is ready. This runs in the background so that a slow index build, or
+     * an unreachable database, does not hold up startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!properties.getIndexes().isCreateOnStartup()) {
+            return;
+        }
+        Thread.ofVirtual().name("review-indexes").start(() -> {
+            var failures = ensureIndexes();
+            if (!failures.isEmpty()) {
+                log.warn("Could not create the review indexes: {}", failures);
+            }
+        });
+    }
+
+    /**
+     * Creates the indexes of the Reviews and ReviewBuckets collections that do not exist yet. Each index is created
+     * on its own, so that one that cannot be built, such as the unique productId index over duplicate data, does not
+     * keep the others from being built.
+     *
+     * @return The indexes that could not be created, as collection.index; empty if all exist.
+     */
+    public List<String> ensureIndexes() {
+        var failures = new ArrayList<String>();
+        indexes().forEach((type, indexes) -> {
+            var collectionName = mongoTemplate.getCollectionName(type);
+            var indexOps = mongoTemplate.indexOps(type);
+            for (var obsolete : OBSOLETE_INDEXES) {
+                var name = collectionName + "." + obsolete;
+                try {
+                    if (indexOps.getIndexInfo().stream().anyMatch(info -> info.getName().equals(obsolete))) {
+                        indexOps.dropIndex(obsolete);
+                        log.info("Dropped obsolete index {}", name);
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Could not drop obsolete index {}", name, e);
+                    failures.add(name);
+                }
+            }
+            for (var index : indexes) {
+                var name = collectionName + "." + index.getIndexOptions().get("name");
+                try {
+                    indexOps.ensureIndex(index);
+                    log.info("Ensured index {}", name);
+                } catch (RuntimeException e) {
+                    log.error("Could not create index {}", name, e);
+                    failures.add(name);
+                }
+            }
+        });
+        failedIndexes = List.copyOf(failures);
+        return failedIndexes;
+    }
+
+    /**
+     * Returns the usage statistics of the indexes of the Reviews collection, and the plans MongoDB picks for the
+     * queries the service runs.
+     *
+     * @return The index report.
+     */
+    public IndexReport getReport() {
+        return new IndexReport(indexUsage(), queryPlans(), failedIndexes);
+    }
+
+    private static Map<Class<?>, List<IndexDefinition>> indexes() {
+        var indexes = new LinkedHashMap<Class<?>, List<IndexDefinition>>();
+        // findByProductId and addEntry look reviews up by product, and there is one review per product
+        indexes.put(Review.class, List.of(
+                new Index().on("productId", Sort.Direction.ASC).unique().named("productId_unique"),
+                entryUsernameIndex(),
+                entryTextIndex()));
+        // The buckets of a review are read in order and appended to by product
+        indexes.put(ReviewBucket.class, List.of(
+                new Index().on("productId", Sort.Direction.ASC).on("startDate", Sort.Direction.ASC)
+                        .on("_id", Sort.Direction.ASC).named("productId_startDate_id"),
+                entryUsernameIndex(),
+                entryTextIndex()));
+        return indexes;
+    }
+
+    private static IndexDefinition entryUsernameIndex() {
+        // A multikey index, with one key per entry, for the reviews of a user
+        return new Index().on("entries.username", Sort.Direction.ASC).named("entries_username");
+    }
+
+    private static IndexDefinition entryTextIndex() {
+        // The search matches the text of the entries, wherever they are stored. Words are indexed as written, without
+        // stemming, so that the search can tell which entries of a matching document contain them.
+        return TextIndexDefinition.builder()
+                .onField("entries.review")
+                .withDefaultLanguage("none")
+                .named("entries_review_words")
+                .build();
+    }
+
+    private List<IndexUsage> indexUsage() {
+        var collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Review.class));
+        var usage = new ArrayList<IndexUsage>();
+        for (var stats : collection.aggregate(List.of(new Document("$indexStats", new Document())))) {
+            var accesses = stats.get("accesses", Document.class);
+            usage.add(new IndexUsage(
+                    stats.getString("name"),
+                    stats.get("key", Document.class),
+                    ((Number) accesses.get("ops")).longValue(),
+                    accesses.get("since", Date.class)));
+        }
+        return usage;
+    }
+
+    private List<QueryPlan> queryPlans() {
+        return List.of(
+                explain("findByProductId", new Document("productId", 0), null),
+                explain("addEntry", new Document("productId", 0), null),
+                explain("findPage", new Document(), new Document("_id", 1)),
+                explain("findByUsername", new Document("entries.username", ""), null));
+    }
+
+    private QueryPlan explain(String query, Document filter, Document sort) {
+        var collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Review.class));
+        var find = collection.find(filter);
+        if (sort != null) {
+            find.sort(sort);
+        }
+        var explain = find.explain();
+
+        var stages = new ArrayList<String>();
+        var queryPlanner = explain.get("queryPlanner", Document.class);
+        if (queryPlanner != null) {
+            collectStages(queryPlanner.get("winningPlan", Document.class), stages);
+        }
+        var description = sort == null ? filter.toJson() : filter.toJson() + " sort " + sort.toJson();
+        return new QueryPlan(query, description, stages, stages.contains("COLLSCAN"));
+    }
+
+    /**
+     * Collects the stage names of a plan, from the root down. Plans of the slot-based engine wrap the stage tree in
+     * a queryPlan field.
+     */
+    private static void collectStages(Document plan, List<String> stages) {
+        if (plan == null) {
+            return;
+        }
+        if (plan.containsKey("queryPlan")) {
+            collectStages(plan.get("queryPlan", Document.class), stages);
+            return;
+        }
+        if (plan.getString("stage") != null) {
+            stages.add(plan.getString("stage"));
+        }
+        collectStages(plan.get("inputStage", Document.class), stages);
+        if (plan.get("inputStages") instanceof List<?> inputStages) {
+            inputStages.forEach(stage -> collectStages((Document) stage, stages));
+        }
+    }
+}
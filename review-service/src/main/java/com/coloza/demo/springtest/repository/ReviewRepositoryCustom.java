@@ -0,0 +1,180 @@
+package com.coloza.demo.springtest.repository;
+
+import com.coloza.demo.springtest.model.AppendFailure;
+import com.coloza.demo.springtest.model.ProductReviewEntry;
+import com.coloza.demo.springtest.model.Review;
+import com.coloza.demo.springtest.model.ReviewEntry;
+import com.coloza.demo.springtest.model.ReviewSearchHit;
+import com.coloza.demo.springtest.model.ReviewSummary;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Review operations that need more than the derived queries of {@link ReviewRepository}. The finders declared here
+ * take precedence over the generated ones, and return reviews with their bucketed entries.
+ */
+public interface ReviewRepositoryCustom {
+    /**
+     * Returns the review with the specified ID.
+     *
+     * @param id The ID of the review.
+     * @return The review with all its entries.
+     */
+    Optional<Review> findById(String id);
+
+    /**
+     * Returns the review of the specified product.
+     *
+     * @param productId The product ID of the review.
+     * @return The review with all its entries.
+     */
+    Optional<Review> findByProductId(Integer productId);
+
+    /**
+     * Returns all reviews.
+     *
+     * @return All reviews with all their entries.
+     */
+    List<Review> findAll();
+
+    /**
+     * Deletes the review with the specified ID, along with its bucketed entries.
+     *
+     * @param id The ID of the review.
+     */
+    void deleteById(String id);
+
+    /**
+     * Returns the version of the review with the specified ID, reading nothing else.
+     *
+     * @param id The ID of the review.
+     * @return The version of the review, or empty if there is no such review.
+     */
+    Optional<Integer> findVersion(String id);
+
+    /**
+     * Deletes the review with the specified ID, along with its bucketed entries, if it has the expected version.
+     *
+     * @param id              The ID of the review.
+     * @param expectedVersion The version the review must have.
+     * @return True if the review was deleted.
+     */
+    boolean deleteById(String id, int expectedVersion);
+
+    /**
+     * Replaces the entries of the review with the specified ID in a single atomic update, if it has the expected
+     * version, incrementing its version and recomputing its counters.
+     *
+     * @param id              The ID of the review.
+     * @param expectedVersion The version the review must have.
+     * @param entries         The new entries of the review.
+     * @return The updated review, or empty if there is no review with the specified ID and version.
+     */
+    Optional<Review> replaceEntries(String id, int expectedVersion, List<ReviewEntry> entries);
+
+    /**
+     * Appends an entry to the review of the specified product in a single atomic update, incrementing its version.
+     * The review is created if the product has none yet.
+     *
+     * @param productId The product ID of the review.
+     * @param entry     The entry to append.
+     * @return The updated review, carrying only the appended entry.
+     */
+    Review addEntry(Integer productId, ReviewEntry entry);
+
+    /**
+     * Appends an entry to the review of the specified product, if it has the expected version, incrementing its
+     * version.
+     *
+     * @param productId       The product ID of the review.
+     * @param entry           The entry to append.
+     * @param expectedVersion The version the review must have.
+     * @return The updated review, carrying only the appended entry, or empty if the product has no review with the
+     * expected version.
+     */
+    Optional<Review> addEntry(Integer productId, ReviewEntry entry, int expectedVersion);
+
+    /**
+     * Appends entries to the reviews of several products with one unordered bulk write, creating the reviews of
+     * products that have none yet.
+     *
+     * @param entries The entries to append, by product ID.
+     * @return Why the entries of a product could not all be appended, and how many were, by product ID; empty if all
+     * were appended.
+     */
+    Map<Integer, AppendFailure> addEntries(Map<Integer, List<ReviewEntry>> entries);
+
+    /**
+     * Searches the text of the review entries, most relevant first. Only the matching entries are read out of the
+     * matching reviews and buckets. Words are matched whole and case-insensitively, without stemming. Relevance is
+     * scored per review or bucket, so the matching entries of one document share a score.
+     *
+     * @param text   The words to search for, in MongoDB text search syntax.
+     * @param offset The number of matching entries to skip.
+     * @param limit  The maximum number of matching entries to return.
+     * @return The matching entries with their product IDs.
+     */
+    List<ReviewSearchHit> search(String text, int offset, int limit);
+
+    /**
+     * Returns the entries written by the specified user, newest first. Only the reviews and buckets holding an entry
+     * of the user are read, through the index on the entry usernames.
+     *
+     * @param username The username of the reviewer.
+     * @param offset   The number of entries to skip.
+     * @param limit    The maximum number of entries to return.
+     * @return The entries of the user with their product IDs.
+     */
+    List<ProductReviewEntry> findByUsername(String username, int offset, int limit);
+
+    /**
+     * Streams all reviews from a cursor, fetching them in batches, so that they never have to be held in memory
+     * together. The stream must be closed.
+     *
+     * @param fields    The fields to read, or null for all fields.
+     * @param batchSize The number of reviews fetched per round trip.
+     * @return The reviews, with all their entries if the entries are read.
+     */
+    Stream<Review> streamAll(Collection<String> fields, int batchSize);
+
+    /**
+     * Returns the reviews that follow the specified review ID in ID order.
+     *
+     * @param after          The ID of the last review of the previous page, or null for the first page.
+     * @param limit          The maximum number of reviews to return.
+     * @param includeEntries Whether to load the entries of the reviews.
+     * @return The page of reviews.
+     */
+    List<Review> findPage(String after, int limit, boolean includeEntries);
+
+    /**
+     * Returns a window of the entries of the review with the specified ID, without reading the other entries.
+     *
+     * @param id          The ID of the review.
+     * @param offset      The number of entries to skip.
+     * @param limit       The maximum number of entries to return.
+     * @param newestFirst Whether to count from the newest entry instead of the oldest.
+     * @return The entries in the window, in the requested order, or empty if there is no such review.
+     */
+    Optional<List<ReviewEntry>> findEntries(String id, int offset, int limit, boolean newestFirst);
+
+    /**
+     * Returns the entry counters of the reviews of the specified products, without reading their entries.
+     *
+     * @param productIds The product IDs.
+     * @return The summaries of the products that have a review.
+     */
+    List<ReviewSummary> findSummaries(Collection<Integer> productIds);
+
+    /**
+     * Recomputes the entry counters of the reviews whose entries are all stored in the review document and whose
+     * counters do not match them, such as reviews stored before the counters were maintained.
+     *
+     * @return The number of reviews updated.
+     */
+    long backfillCounters();
+}
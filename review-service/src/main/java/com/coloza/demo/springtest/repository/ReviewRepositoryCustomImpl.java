@@ -0,0 +1,519 @@
+package com.coloza.demo.springtest.repository;
+
+import com.coloza.demo.springtest.model.AppendFailure;
+import com.coloza.demo.springtest.model.ProductReviewEntry;
+import com.coloza.demo.springtest.model.Review;
+import com.coloza.demo.springtest.model.ReviewBucket;
+import com.coloza.demo.springtest.model.ReviewEntry;
+import com.coloza.demo.springtest.model.ReviewSearchHit;
+import com.coloza.demo.springtest.model.ReviewSummary;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AccumulatorOperators;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+@Slf4j
+@RequiredArgsConstructor
+public class ReviewRepositoryCustomImpl implements ReviewRepositoryCustom {
+    /**
+     * The BSON type number of ObjectId.
+     */
+    private static final int OBJECT_ID_TYPE = 7;
+
+    /**
+     * The MongoDB error code of a unique index violation.
+     */
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    /**
+     * A quoted phrase of a text search.
+     */
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]*)\"");
+
+    /**
+     * A character that is part of a word, and one that is not, in both Java and MongoDB patterns.
+     */
+    private static final String WORD = "[\\p{L}\\p{N}]";
+    private static final String NOT_WORD = "[^\\p{L}\\p{N}]";
+
+    private final MongoTemplate mongoTemplate;
+    private final ReviewBucketStore buckets;
+
+    @Override
+    public Optional<Review> findById(String id) {
+        return Optional.ofNullable(mongoTemplate.findById(id, Review.class)).map(buckets::withEntries);
+    }
+
+    @Override
+    public Optional<Review> findByProductId(Integer productId) {
+        return Optional.ofNullable(mongoTemplate.findOne(Query.query(Criteria.where("productId").is(productId)),
+                Review.class)).map(buckets::withEntries);
+    }
+
+    @Override
+    public List<Review> findAll() {
+        return buckets.withEntries(mongoTemplate.findAll(Review.class));
+    }
+
+    @Override
+    public void deleteById(String id) {
+        var review = mongoTemplate.findAndRemove(Query.query(Criteria.where("_id").is(id)), Review.class);
+        if (review != null && review.getLatestBucket() != null) {
+            buckets.delete(review.getProductId());
+        }
+    }
+
+    @Override
+    public Optional<Integer> findVersion(String id) {
+        var query = Query.query(Criteria.where("_id").is(id));
+        query.fields().include("version");
+        return Optional.ofNullable(mongoTemplate.findOne(query, Review.class)).map(Review::getVersion);
+    }
+
+    @Override
+    public boolean deleteById(String id, int expectedVersion) {
+        var review = mongoTemplate.findAndRemove(Query.query(Criteria.where("_id").is(id)
+                .and("version").is(expectedVersion)), Review.class);
+        if (review != null && review.getLatestBucket() != null) {
+            buckets.delete(review.getProductId());
+        }
+        return review != null;
+    }
+
+    @Override
+    public Optional<Review> replaceEntries(String id, int expectedVersion, List<ReviewEntry> entries) {
+        // The version check and the write are one findAndModify, so no other write can slip in between
+        var query = Query.query(Criteria.where("_id").is(id).and("version").is(expectedVersion));
+        query.fields().include("productId").include("latestBucket");
+        var latestEntryDate = entries.stream()
+                .map(ReviewEntry::getDate)
+                .filter(Objects::nonNull)
+                .max(Comparator.naturalOrder())
+                .orElse(null);
+        var update = new Update()
+                .set("entries", entries)
+                .inc("version", 1)
+                .set("entryCount", entries.size())
+                .set("latestEntryDate", latestEntryDate)
+                .unset("latestBucket")
+                .unset("migrations");
+
+        // The review as it was tells whether it had buckets, whether or not buckets are still enabled
+        var previous = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(false),
+                Review.class);
+        if (previous == null) {
+            return Optional.empty();
+        }
+
+        // The new entries replace the bucketed ones too. An entry being added to a bucket at the same time is lost,
+        // as it would be had it been added just before the replacement.
+        if (previous.getLatestBucket() != null || buckets.isEnabled()) {
+            buckets.delete(previous.getProductId());
+        }
+        var review = Review.builder()
+                .id(id)
+                .productId(previous.getProductId())
+                .version(expectedVersion + 1)
+                .entryCount(entries.size())
+                .latestEntryDate(latestEntryDate)
+                .build();
+        review.getEntries().addAll(entries);
+        return Optional.of(review);
+    }
+
+    @Override
+    public Optional<Review> addEntry(Integer productId, ReviewEntry entry, int expectedVersion) {
+        if (buckets.isEnabled()) {
+            return buckets.addEntry(productId, entry, expectedVersion);
+        }
+
+        var query = Query.query(Criteria.where("productId").is(productId).and("version").is(expectedVersion));
+        query.fields().slice("entries", -1);
+        var update = new Update()
+                .push("entries", entry)
+                .inc("version", 1)
+                .inc("entryCount", 1)
+                .max("latestEntryDate", entry.getDate());
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), Review.class));
+    }
+
+    @Override
+    public Review addEntry(Integer productId, ReviewEntry entry) {
+        if (buckets.isEnabled()) {
+            return buckets.addEntry(productId, entry);
+        }
+
+        // Only the new entry is sent back, however many entries the review already has
+        var query = Query.query(Criteria.where("productId").is(productId));
+        query.fields().slice("entries", -1);
+
+        // $inc on a missing field starts it at 1, so an upserted review gets version 1 and entry count 1
+        var update = new Update()
+                .push("entries", entry)
+                .inc("version", 1)
+                .inc("entryCount", 1)
+                .max("latestEntryDate", entry.getDate());
+        var options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+
+        try {
+            return mongoTemplate.findAndModify(query, update, options, Review.class);
+        } catch (DuplicateKeyException e) {
+            // Two upserts for a new product raced and the unique productId index rejected ours; the review exists now
+            log.info("Retrying entry for product id: {} after a concurrent upsert", productId);
+            return mongoTemplate.findAndModify(query, update, options, Review.class);
+        }
+    }
+
+    @Override
+    public Map<Integer, AppendFailure> addEntries(Map<Integer, List<ReviewEntry>> entries) {
+        var failures = new HashMap<Integer, AppendFailure>();
+        if (buckets.isEnabled()) {
+            // Each entry has to find room in a bucket, so a failure leaves the entries before it appended
+            entries.forEach((productId, productEntries) -> {
+                var applied = 0;
+                try {
+                    for (var entry : productEntries) {
+                        buckets.addEntry(productId, entry);
+                        applied++;
+                    }
+                } catch (DataAccessException e) {
+                    failures.put(productId, new AppendFailure(applied, e.getMessage()));
+                }
+            });
+            return failures;
+        }
+
+        var errors = bulkAddEntries(new ArrayList<>(entries.keySet()), entries);
+        // As in addEntry, an upsert that lost a race with another upsert for the same new product is retried once
+        var raced = errors.entrySet().stream()
+                .filter(error -> error.getValue().getCode() == DUPLICATE_KEY_ERROR)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!raced.isEmpty()) {
+            raced.forEach(errors::remove);
+            errors.putAll(bulkAddEntries(raced, entries));
+        }
+        // A $push of all entries of a product is applied whole or not at all
+        errors.forEach((productId, error) -> failures.put(productId, new AppendFailure(0, error.getMessage())));
+        return failures;
+    }
+
+    private Map<Integer, BulkWriteError> bulkAddEntries(List<Integer> productIds,
+                                                        Map<Integer, List<ReviewEntry>> entries) {
+        var bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Review.class);
+        for (var productId : productIds) {
+            var productEntries = entries.get(productId);
+            var update = new Update()
+                    .inc("version", 1)
+                    .inc("entryCount", productEntries.size())
+                    .max("latestEntryDate", productEntries.stream()
+                            .map(ReviewEntry::getDate)
+                            .max(Comparator.naturalOrder())
+                            .orElseThrow());
+            update.push("entries").each(productEntries.toArray());
+            bulk.upsert(Query.query(Criteria.where("productId").is(productId)), update);
+        }
+
+        try {
+            bulk.execute();
+            return new HashMap<>();
+        } catch (BulkOperationException e) {
+            var errors = new HashMap<Integer, BulkWriteError>();
+            e.getErrors().forEach(error -> errors.put(productIds.get(error.getIndex()), error));
+            return errors;
+        }
+    }
+
+    @Override
+    public List<ReviewSearchHit> search(String text, int offset, int limit) {
+        // Both collections are searched for the whole window, then merged by score
+        var hits = new ArrayList<ReviewSearchHit>();
+        hits.addAll(search(Review.class, text, offset + limit));
+        hits.addAll(search(ReviewBucket.class, text, offset + limit));
+        return hits.stream()
+                .sorted(Comparator.comparing(ReviewSearchHit::getScore).reversed())
+                .skip(offset)
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Returns the best matching entries of one collection. The text index finds the matching documents, and a
+     * $filter keeps the entries that match the search themselves, so that the other entries of a matching review are
+     * not sent back. MongoDB scores documents, not array elements, so every entry of a document gets its score.
+     */
+    private List<ReviewSearchHit> search(Class<?> type, String text, int limit) {
+        var pipeline = new ArrayList<Document>();
+        pipeline.add(new Document("$match", new Document("$text", new Document("$search", text))));
+        if (type == ReviewBucket.class) {
+            pipeline.addAll(buckets.adoptedBucketsOnly());
+        }
+        pipeline.addAll(List.of(
+                new Document("$project", new Document()
+                        .append("_id", 0)
+                        .append("productId", 1)
+                        .append("score", new Document("$meta", "textScore"))
+                        .append("entries", new Document("$filter", new Document()
+                                .append("input", new Document("$ifNull", List.of("$entries", List.of())))
+                                .append("cond", entryMatches(text))))),
+                new Document("$unwind", "$entries"),
+                new Document("$sort", new Document("score", -1).append("productId", 1)),
+                new Document("$limit", limit),
+                new Document("$project", new Document()
+                        .append("productId", 1)
+                        .append("score", 1)
+                        .append("username", "$entries.username")
+                        .append("date", "$entries.date")
+                        .append("review", "$entries.review"))));
+
+        var hits = new ArrayList<ReviewSearchHit>();
+        for (var hit : mongoTemplate.getCollection(mongoTemplate.getCollectionName(type)).aggregate(pipeline)) {
+            hits.add(mongoTemplate.getConverter().read(ReviewSearchHit.class, hit));
+        }
+        return hits;
+    }
+
+    @Override
+    public List<ProductReviewEntry> findByUsername(String username, int offset, int limit) {
+        // Both collections are read for the whole window, then merged by date
+        var entries = new ArrayList<ProductReviewEntry>();
+        entries.addAll(findByUsername(Review.class, username, offset + limit));
+        entries.addAll(findByUsername(ReviewBucket.class, username, offset + limit));
+        return entries.stream()
+                .sorted(Comparator.comparing(ProductReviewEntry::getDate,
+                        Comparator.nullsLast(Comparator.reverseOrder())))
+                .skip(offset)
+                .limit(limit)
+                .toList();
+    }
+
+    private List<ProductReviewEntry> findByUsername(Class<?> type, String username, int limit) {
+        var operations = new ArrayList<AggregationOperation>();
+        operations.add(Aggregation.match(Criteria.where("entries.username").is(username)));
+        if (type == ReviewBucket.class) {
+            buckets.adoptedBucketsOnly().forEach(stage -> operations.add(context -> stage));
+        }
+        operations.addAll(List.of(
+                Aggregation.project("productId")
+                        .and(ArrayOperators.Filter.filter("entries").as("entry")
+                                .by(ComparisonOperators.valueOf("entry.username").equalToValue(username)))
+                        .as("entries"),
+                Aggregation.unwind("entries"),
+                Aggregation.sort(Sort.by(Sort.Direction.DESC, "entries.date")),
+                Aggregation.limit(limit),
+                Aggregation.project("productId")
+                        .and("entries.username").as("username")
+                        .and("entries.date").as("date")
+                        .and("entries.review").as("review")));
+        var aggregation = Aggregation.newAggregation(operations);
+        return mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(type), ProductReviewEntry.class)
+                .getMappedResults();
+    }
+
+    /**
+     * Returns the $filter condition that keeps the entries matching a text search the way the text index matches
+     * documents. The index neither stems words nor drops stop words, and splits text into words at anything that is
+     * not a letter or digit; the condition matches whole words, case-insensitively, in the same way. An entry has to
+     * contain every quoted phrase if there are any, and otherwise one of the words, and none of the negated words.
+     * Unlike the index, the condition does tell accented letters from unaccented ones.
+     */
+    private static Document entryMatches(String text) {
+        var phrases = new ArrayList<String>();
+        var matcher = PHRASE.matcher(text);
+        while (matcher.find()) {
+            phrases.add(matcher.group(1));
+        }
+        var words = new ArrayList<String>();
+        var negated = new ArrayList<String>();
+        for (var term : PHRASE.matcher(text).replaceAll(" ").split("\\s+")) {
+            if (term.startsWith("-")) {
+                negated.addAll(words(term.substring(1)));
+            } else {
+                words.addAll(words(term));
+            }
+        }
+
+        var conditions = new ArrayList<Document>();
+        if (phrases.isEmpty()) {
+            conditions.add(reviewMatches(String.join("|", words)));
+        } else {
+            phrases.forEach(phrase -> conditions.add(reviewMatches(String.join(NOT_WORD + "+", words(phrase)))));
+        }
+        if (!negated.isEmpty()) {
+            conditions.add(new Document("$not", List.of(reviewMatches(String.join("|", negated)))));
+        }
+        return new Document("$and", conditions);
+    }
+
+    /**
+     * Returns an expression matching the review text of an entry that contains the specified words as whole words.
+     */
+    private static Document reviewMatches(String words) {
+        var pattern = words.isEmpty() ? "(?!)" : "(?<!" + WORD + ")(?:" + words + ")(?!" + WORD + ")";
+        return new Document("$regexMatch", new Document()
+                .append("input", new Document("$ifNull", List.of("$$this.review", "")))
+                .append("regex", pattern)
+                .append("options", "i"));
+    }
+
+    /**
+     * Splits text into words the way the text index does, which also leaves no character to escape in a pattern.
+     */
+    private static List<String> words(String text) {
+        return Arrays.stream(text.split(NOT_WORD + "+"))
+                .filter(word -> !word.isEmpty())
+                .toList();
+    }
+
+    @Override
+    public Stream<Review> streamAll(Collection<String> fields, int batchSize) {
+        var query = new Query().cursorBatchSize(batchSize);
+        var withEntries = fields == null || fields.contains("entries");
+        if (fields != null) {
+            fields.forEach(query.fields()::include);
+            if (withEntries) {
+                // Needed to find the buckets of the review
+                query.fields().include("productId").include("latestBucket").include("migrations");
+            }
+        }
+        // Buckets are read one review at a time, which bounds memory by the largest review
+        var reviews = mongoTemplate.stream(query, Review.class);
+        return withEntries ? reviews.map(buckets::withEntries) : reviews;
+    }
+
+    @Override
+    public List<Review> findPage(String after, int limit, boolean includeEntries) {
+        var query = new Query().with(Sort.by("_id")).limit(limit);
+        if (after != null) {
+            query.addCriteria(idsAfter(after));
+        }
+        if (!includeEntries) {
+            query.fields().exclude("entries");
+            return mongoTemplate.find(query, Review.class);
+        }
+        return buckets.withEntries(mongoTemplate.find(query, Review.class));
+    }
+
+    @Override
+    public Optional<List<ReviewEntry>> findEntries(String id, int offset, int limit, boolean newestFirst) {
+        // $slice on the stored array, so that only the window leaves the server
+        var entries = ConditionalOperators.ifNull("entries").then(List.of());
+        var window = newestFirst
+                ? ArrayOperators.Slice.sliceArrayOf(ArrayOperators.ReverseArray.reverseArrayOf(entries))
+                : ArrayOperators.Slice.sliceArrayOf(entries);
+        var aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(id)),
+                Aggregation.project("productId", "latestBucket", "migrations")
+                        .and(ArrayOperators.Size.lengthOfArray(entries)).as("inlineCount")
+                        .and(window.offset(offset).itemCount(limit)).as("window"));
+        var result = mongoTemplate.aggregate(aggregation, Review.class, Document.class).getUniqueMappedResult();
+        if (result == null) {
+            return Optional.empty();
+        }
+
+        var inlineWindow = result.getList("window", Document.class).stream()
+                .map(entry -> mongoTemplate.getConverter().read(ReviewEntry.class, entry))
+                .toList();
+        if (result.get("latestBucket") == null) {
+            return Optional.of(inlineWindow);
+        }
+        return Optional.of(findBucketedEntries(result.getInteger("productId"), result.getList("migrations",
+                Integer.class), result.getInteger("inlineCount"), inlineWindow, offset, limit, newestFirst));
+    }
+
+    @Override
+    public List<ReviewSummary> findSummaries(Collection<Integer> productIds) {
+        return mongoTemplate.query(Review.class)
+                .as(ReviewSummary.class)
+                .matching(Query.query(Criteria.where("productId").in(productIds)))
+                .all();
+    }
+
+    @Override
+    public long backfillCounters() {
+        // A pipeline update computes the counters from the array it updates, so a concurrent entry cannot be missed
+        var entries = ConditionalOperators.ifNull("entries").then(List.of());
+        var entryCount = ArrayOperators.Size.lengthOfArray(entries);
+        var query = Query.query(new Criteria().andOperator(
+                Criteria.where("latestBucket").exists(false),
+                Criteria.expr(ComparisonOperators.valueOf("entryCount").notEqualTo(entryCount))));
+        var update = AggregationUpdate.update()
+                .set("entryCount").toValue(entryCount)
+                .set("latestEntryDate").toValue(AccumulatorOperators.Max.maxOf("entries.date"));
+        return mongoTemplate.updateMulti(query, update, Review.class).getModifiedCount();
+    }
+
+    /**
+     * Returns a window of the entries of a bucketed review, whose buckets hold its older entries and whose document
+     * holds any entries added since bucketing was turned off.
+     */
+    private List<ReviewEntry> findBucketedEntries(Integer productId, List<Integer> migrations, int inlineCount,
+                                                  List<ReviewEntry> inlineWindow, int offset, int limit,
+                                                  boolean newestFirst) {
+        if (newestFirst) {
+            var entries = new ArrayList<>(inlineWindow);
+            if (entries.size() < limit) {
+                entries.addAll(buckets.findEntries(productId, migrations,
+                        Math.max(0, offset - inlineCount), limit - entries.size(), true));
+            }
+            return entries;
+        }
+
+        var entries = new ArrayList<>(buckets.findEntries(productId, migrations, offset, limit, false));
+        if (entries.size() < limit && inlineCount > 0) {
+            var query = Query.query(Criteria.where("productId").is(productId));
+            query.fields().slice("entries", (int) Math.max(0, offset - buckets.count(productId, migrations)),
+                    limit - entries.size());
+            var review = mongoTemplate.findOne(query, Review.class);
+            if (review != null) {
+                entries.addAll(review.getEntries());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Matches the IDs after the specified one. Reviews created through the API have ObjectIds, while imported ones
+     * may have string IDs; MongoDB orders all strings before all ObjectIds, and a range on one type never matches the
+     * other, so a page that ends on a string ID continues with the remaining strings and then every ObjectId.
+     */
+    private static Criteria idsAfter(String after) {
+        if (ObjectId.isValid(after)) {
+            return Criteria.where("_id").gt(new ObjectId(after));
+        }
+        return new Criteria().orOperator(
+                Criteria.where("_id").gt(after),
+                Criteria.where("_id").type(OBJECT_ID_TYPE));
+    }
+}
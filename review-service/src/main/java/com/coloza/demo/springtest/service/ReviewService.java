@@ -1,9 +1,19 @@
 package com.coloza.demo.springtest.service;
 
+import com.coloza.demo.springtest.model.ImportResult;
+import com.coloza.demo.springtest.model.ImportedReviewEntry;
+import com.coloza.demo.springtest.model.ProductReviewEntry;
 import com.coloza.demo.springtest.model.Review;
+import com.coloza.demo.springtest.model.ReviewEntry;
+import com.coloza.demo.springtest.model.ReviewSearchHit;
+import com.coloza.demo.springtest.model.ReviewSummary;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 public interface ReviewService {
     /**
@@ -14,6 +24,14 @@ public interface ReviewService {
      */
     Optional<Review> findById(String id);
 
+    /**
+     * Returns the version of the review with the specified ID, without reading its entries.
+     *
+     * @param id The ID of the review.
+     * @return The version of the review, or empty if there is no such review.
+     */
+    Optional<Integer> findVersion(String id);
+
     /**
      * Returns the review with the specified product ID.
      *
@@ -22,6 +40,45 @@ public interface ReviewService {
      */
     Optional<Review> findByProductId(Integer productId);
 
+    /**
+     * Returns a window of the entries of the review with the specified ID.
+     *
+     * @param id          The ID of the review.
+     * @param offset      The number of entries to skip.
+     * @param limit       The maximum number of entries to return.
+     * @param newestFirst Whether to count from the newest entry instead of the oldest.
+     * @return The entries in the window, or empty if there is no review with the specified ID.
+     */
+    Optional<List<ReviewEntry>> findEntries(String id, int offset, int limit, boolean newestFirst);
+
+    /**
+     * Returns the number of entries and the date of the latest entry of the reviews of the specified products.
+     *
+     * @param productIds The product IDs.
+     * @return One summary per product ID, in the same order; products without a review have no entries.
+     */
+    List<ReviewSummary> findSummaries(List<Integer> productIds);
+
+    /**
+     * Searches the text of the review entries, most relevant first.
+     *
+     * @param text   The words to search for.
+     * @param offset The number of matching entries to skip.
+     * @param limit  The maximum number of matching entries to return.
+     * @return The matching entries with their product IDs.
+     */
+    List<ReviewSearchHit> search(String text, int offset, int limit);
+
+    /**
+     * Returns the entries written by the specified user, newest first.
+     *
+     * @param username The username of the reviewer.
+     * @param offset   The number of entries to skip.
+     * @param limit    The maximum number of entries to return.
+     * @return The entries of the user with their product IDs.
+     */
+    List<ProductReviewEntry> findByUsername(String username, int offset, int limit);
+
     /**
      * Returns all reviews in the database.
      *
@@ -29,6 +86,16 @@ public interface ReviewService {
      */
     List<Review> findAll();
 
+    /**
+     * Returns one page of reviews in ID order.
+     *
+     * @param after          The ID of the last review of the previous page, or null for the first page.
+     * @param limit          The maximum number of reviews to return.
+     * @param includeEntries Whether to include the entries of the reviews.
+     * @return The page of reviews.
+     */
+    List<Review> findPage(String after, int limit, boolean includeEntries);
+
     /**
      * Saves the specified review to the database.
      *
@@ -38,12 +105,57 @@ public interface ReviewService {
     Review save(Review review);
 
     /**
-     * Updates the specified review in the database.
+     * Replaces the entries of the specified review in the database, if it still has the expected version. The check
+     * and the write are a single atomic operation.
+     *
+     * @param review          The review to update, with its ID and its new entries.
+     * @param expectedVersion The version the review must have, such as from the ETag the client read.
+     * @return The updated review with its incremented version, or empty if there is no review with the specified ID
+     * and version.
+     */
+    Optional<Review> update(Review review, int expectedVersion);
+
+    /**
+     * Adds an entry to the review for the specified product ID, creating the review if there is none. The review
+     * document is neither read nor rewritten, so concurrent entries are never lost.
+     *
+     * @param productId The product ID of the review.
+     * @param entry     The entry to add.
+     * @return The updated review, carrying only the added entry.
+     */
+    Review addEntry(Integer productId, ReviewEntry entry);
+
+    /**
+     * Adds an entry to the review for the specified product ID, if the review still has the expected version.
+     *
+     * @param productId       The product ID of the review.
+     * @param entry           The entry to add.
+     * @param expectedVersion The version the review must have.
+     * @return The updated review, carrying only the added entry, or empty if the product has no review with the
+     * expected version.
+     */
+    Optional<Review> addEntry(Integer productId, ReviewEntry entry, int expectedVersion);
+
+    /**
+     * Imports review entries from newline-delimited JSON, one {@link ImportedReviewEntry} per line. The lines are
+     * read and written in chunks, so memory use does not depend on the size of the import.
      *
-     * @param review The review to update.
-     * @return The updated review.
+     * @param lines The lines to import.
+     * @return The number of entries imported and the lines that failed.
+     * @throws IOException If the lines cannot be read.
      */
-    Review update(Review review);
+    ImportResult importEntries(BufferedReader lines) throws IOException;
+
+    /**
+     * Writes all reviews as newline-delimited JSON, one review per line, reading them from a cursor so that memory
+     * use does not depend on the number of reviews.
+     *
+     * @param fields The fields of each review to write, or null for all fields.
+     * @param out    The stream to write to.
+     * @return The number of reviews written.
+     * @throws IOException If the reviews cannot be written.
+     */
+    long exportReviews(Set<String> fields, OutputStream out) throws IOException;
 
     /**
      * Deletes the review with the specified ID.
@@ -51,4 +163,13 @@ public interface ReviewService {
      * @param id The ID of the review to delete.
      */
     void delete(String id);
+
+    /**
+     * Deletes the review with the specified ID, if it still has the expected version.
+     *
+     * @param id              The ID of the review to delete.
+     * @param expectedVersion The version the review must have.
+     * @return True if the review was deleted.
+     */
+    boolean delete(String id, int expectedVersion);
 }
@@ -1,13 +1,39 @@
 package com.coloza.demo.springtest.service;
 
+import com.coloza.demo.springtest.cache.ReviewCache;
+import com.coloza.demo.springtest.config.ReviewProperties;
+import com.coloza.demo.springtest.model.ImportError;
+import com.coloza.demo.springtest.model.ImportResult;
+import com.coloza.demo.springtest.model.ImportedReviewEntry;
+import com.coloza.demo.springtest.model.ProductReviewEntry;
 import com.coloza.demo.springtest.model.Review;
+import com.coloza.demo.springtest.model.ReviewEntry;
+import com.coloza.demo.springtest.model.ReviewSearchHit;
+import com.coloza.demo.springtest.model.ReviewSummary;
 import com.coloza.demo.springtest.repository.ReviewRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -15,15 +41,47 @@ import java.util.Optional;
 public class ReviewServiceImpl implements ReviewService {
 
     private final ReviewRepository repository;
+    private final ReviewCache cache;
+    private final ReviewProperties properties;
+    private final ObjectMapper objectMapper;
 
     @Override
     public Optional<Review> findById(String id) {
         return repository.findById(id);
     }
 
+    @Override
+    public Optional<Integer> findVersion(String id) {
+        return repository.findVersion(id);
+    }
+
     @Override
     public Optional<Review> findByProductId(Integer productId) {
-        return repository.findByProductId(productId);
+        return cache.get(productId, repository::findByProductId);
+    }
+
+    @Override
+    public Optional<List<ReviewEntry>> findEntries(String id, int offset, int limit, boolean newestFirst) {
+        return repository.findEntries(id, offset, limit, newestFirst);
+    }
+
+    @Override
+    public List<ReviewSummary> findSummaries(List<Integer> productIds) {
+        var summaries = repository.findSummaries(productIds).stream()
+                .collect(Collectors.toMap(ReviewSummary::getProductId, Function.identity()));
+        return productIds.stream()
+                .map(productId -> summaries.getOrDefault(productId, new ReviewSummary(productId, 0, null)))
+                .toList();
+    }
+
+    @Override
+    public List<ReviewSearchHit> search(String text, int offset, int limit) {
+        return repository.search(text, offset, limit);
+    }
+
+    @Override
+    public List<ProductReviewEntry> findByUsername(String username, int offset, int limit) {
+        return repository.findByUsername(username, offset, limit);
     }
 
     @Override
@@ -31,20 +89,161 @@ public class ReviewServiceImpl implements ReviewService {
         return repository.findAll();
     }
 
+    @Override
+    public List<Review> findPage(String after, int limit, boolean includeEntries) {
+        return repository.findPage(after, limit, includeEntries);
+    }
+
     @Override
     public Review save(Review review) {
         review.setVersion(1);
-        return repository.save(review);
+        review.setEntryCount(review.getEntries().size());
+        review.setLatestEntryDate(review.getEntries().stream()
+                .map(ReviewEntry::getDate)
+                .filter(Objects::nonNull)
+                .max(Comparator.naturalOrder())
+                .orElse(null));
+        return evictAfter(review.getProductId(), repository.save(review));
     }
 
     @Override
-    public Review update(Review review) {
-        review.setVersion(review.getVersion() + 1);
-        return repository.save(review);
+    public Optional<Review> update(Review review, int expectedVersion) {
+        var updated = repository.replaceEntries(review.getId(), expectedVersion, review.getEntries());
+        updated.ifPresent(written -> cache.evictProduct(written.getProductId()));
+        return updated;
+    }
+
+    @Override
+    public Review addEntry(Integer productId, ReviewEntry entry) {
+        entry.setDate(new Date());
+        return evictAfter(productId, repository.addEntry(productId, entry));
+    }
+
+    @Override
+    public Optional<Review> addEntry(Integer productId, ReviewEntry entry, int expectedVersion) {
+        entry.setDate(new Date());
+        var updated = repository.addEntry(productId, entry, expectedVersion);
+        updated.ifPresent(written -> cache.evictProduct(productId));
+        return updated;
+    }
+
+    @Override
+    public ImportResult importEntries(BufferedReader lines) throws IOException {
+        var result = new ImportResult();
+        var chunk = new ImportChunk();
+        long lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            result.setLines(result.getLines() + 1);
+
+            ImportedReviewEntry imported;
+            try {
+                imported = objectMapper.readValue(line, ImportedReviewEntry.class);
+            } catch (JsonProcessingException e) {
+                fail(result, lineNumber, e.getOriginalMessage());
+                continue;
+            }
+            if (imported.getProductId() == null) {
+                fail(result, lineNumber, "productId is required");
+                continue;
+            }
+
+            var entry = imported.toEntry();
+            if (entry.getDate() == null) {
+                entry.setDate(new Date());
+            }
+            chunk.add(imported.getProductId(), entry, lineNumber);
+            if (chunk.size == properties.getIngest().getChunkSize()) {
+                write(chunk, result);
+                chunk = new ImportChunk();
+            }
+        }
+        write(chunk, result);
+
+        log.info("Imported {} review entries from {} lines, {} failed", result.getImported(), result.getLines(),
+                result.getFailed());
+        return result;
+    }
+
+    @Override
+    public long exportReviews(Set<String> fields, OutputStream out) throws IOException {
+        long exported = 0;
+        try (var reviews = repository.streamAll(fields, properties.getExport().getBatchSize())) {
+            for (var iterator = reviews.iterator(); iterator.hasNext(); exported++) {
+                JsonNode review = objectMapper.valueToTree(iterator.next());
+                if (fields != null) {
+                    ((ObjectNode) review).retain(fields);
+                }
+                out.write(objectMapper.writeValueAsBytes(review));
+                out.write('\n');
+            }
+        }
+        log.info("Exported {} reviews", exported);
+        return exported;
     }
 
     @Override
     public void delete(String id) {
         repository.deleteById(id);
+        cache.evictReview(id);
+    }
+
+    @Override
+    public boolean delete(String id, int expectedVersion) {
+        var deleted = repository.deleteById(id, expectedVersion);
+        if (deleted) {
+            cache.evictReview(id);
+        }
+        return deleted;
+    }
+
+    /**
+     * Evicts the cached review of a product after a write on this instance, without waiting for the change stream.
+     */
+    private Review evictAfter(Integer productId, Review written) {
+        cache.evictProduct(productId);
+        return written;
+    }
+
+    private void write(ImportChunk chunk, ImportResult result) {
+        if (chunk.size == 0) {
+            return;
+        }
+        var failures = repository.addEntries(chunk.entries);
+        chunk.entries.keySet().forEach(cache::evictProduct);
+        result.setImported(result.getImported() + chunk.size);
+        failures.forEach((productId, failure) -> {
+            // Only the lines after those that were appended failed, so that a retry does not duplicate entries
+            var lineNumbers = chunk.lineNumbers.get(productId);
+            var failed = lineNumbers.subList(failure.getApplied(), lineNumbers.size());
+            result.setImported(result.getImported() - failed.size());
+            failed.forEach(lineNumber -> fail(result, lineNumber, failure.getMessage()));
+        });
+    }
+
+    private void fail(ImportResult result, long lineNumber, String message) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getErrors().size() < properties.getIngest().getMaxErrors()) {
+            result.getErrors().add(new ImportError(lineNumber, message));
+        }
+    }
+
+    /**
+     * The entries of one chunk of an import, grouped by product, and the lines they came from.
+     */
+    private static class ImportChunk {
+        private final Map<Integer, List<ReviewEntry>> entries = new LinkedHashMap<>();
+        private final Map<Integer, List<Long>> lineNumbers = new HashMap<>();
+        private int size;
+
+        void add(Integer productId, ReviewEntry entry, long lineNumber) {
+            entries.computeIfAbsent(productId, id -> new ArrayList<>()).add(entry);
+            lineNumbers.computeIfAbsent(productId, id -> new ArrayList<>()).add(lineNumber);
+            size++;
+        }
     }
 }
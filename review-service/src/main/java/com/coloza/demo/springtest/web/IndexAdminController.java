@@ -0,0 +1,27 @@
+package com.coloza.demo.springtest.web;
+
+import com.coloza.demo.springtest.model.IndexReport;
+import com.coloza.demo.springtest.repository.ReviewIndexManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * A RestController that reports on the indexes of the review store.
+ */
+@RestController
+@RequiredArgsConstructor
+public class IndexAdminController {
+    private final ReviewIndexManager indexManager;
+
+    /**
+     * Returns the usage statistics of the review indexes, and flags the queries that scan the whole collection.
+     *
+     * @return The index report.
+     */
+    @GetMapping("/admin/indexes")
+    public ResponseEntity<IndexReport> getIndexReport() {
+        return ResponseEntity.ok(indexManager.getReport());
+    }
+}
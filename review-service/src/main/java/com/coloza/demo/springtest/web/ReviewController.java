@@ -1,20 +1,37 @@
 package com.coloza.demo.springtest.web;
 
+import com.coloza.demo.springtest.model.ImportResult;
+import com.coloza.demo.springtest.model.ProductReviewEntry;
 import com.coloza.demo.springtest.model.Review;
 import com.coloza.demo.springtest.model.ReviewEntry;
+import com.coloza.demo.springtest.model.ReviewSearchHit;
+import com.coloza.demo.springtest.model.ReviewSummary;
 import com.coloza.demo.springtest.service.ReviewService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * A RestController that manages product reviews.
@@ -23,16 +40,41 @@ import java.util.Optional;
 @RestController
 @RequiredArgsConstructor
 public class ReviewController {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_OFFSET = 10000;
+    private static final String NDJSON = "application/x-ndjson";
+    private static final Set<String> EXPORT_FIELDS =
+            Set.of("id", "productId", "version", "entries", "entryCount", "latestEntryDate");
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+    private static final String ANY_VERSION = "*";
+
     private final ReviewService service;
 
     /**
-     * Returns the review with the specified ID.
+     * Returns the review with the specified ID. A client polling the review sends the ETag it holds in If-None-Match,
+     * and gets 304 Not Modified without the review being read if its version is unchanged.
      *
-     * @param id The ID of the review to return.
-     * @return The review with the specified ID, or 404 Not Found.
+     * @param id          The ID of the review to return.
+     * @param ifNoneMatch The ETags of the versions the client already has.
+     * @return The review with the specified ID, 304 Not Modified, or 404 Not Found.
      */
     @GetMapping("/review/{id}")
-    public ResponseEntity<?> getReview(@PathVariable String id) {
+    public ResponseEntity<?> getReview(@PathVariable String id,
+                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                       String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            var version = service.findVersion(id);
+            if (version.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            var eTag = Integer.toString(version.get());
+            if (Arrays.stream(ifNoneMatch.split(","))
+                    .map(ReviewController::versionOf)
+                    .anyMatch(tag -> tag.equals("*") || tag.equals(eTag))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+        }
+
         return service.findById(id)
                 .map(review -> {
                     try {
@@ -49,24 +91,126 @@ public class ReviewController {
     }
 
     /**
-     * Returns either all reviews or the review for the specified productId.
+     * Returns a window of the entries of the review with the specified ID, without loading the other entries.
+     *
+     * @param id     The ID of the review.
+     * @param offset The number of entries to skip.
+     * @param limit  The maximum number of entries to return.
+     * @param order  "oldest" to count from the oldest entry, or "newest" to return the newest entries first.
+     * @return The entries in the window, 400 Bad Request for an unknown order, or 404 Not Found.
+     */
+    @GetMapping("/review/{id}/entries")
+    public ResponseEntity<List<ReviewEntry>> getReviewEntries(
+            @PathVariable String id,
+            @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @RequestParam(value = "limit", defaultValue = "10") int limit,
+            @RequestParam(value = "order", defaultValue = "oldest") String order) {
+        if (offset < 0 || !(order.equals("oldest") || order.equals("newest"))) {
+            return ResponseEntity.badRequest().build();
+        }
+        return service.findEntries(id, offset, Math.clamp(limit, 1, MAX_PAGE_SIZE), order.equals("newest"))
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Returns either one page of reviews or the review for the specified productId. Pages are ordered by review ID;
+     * when a page is full, the Link header points to the next one.
      *
-     * @param productId The productId for the review to return. This request parameter is optional, if it is omitted
-     *                  then all reviews are returned.
+     * @param productId      The productId for the review to return. This request parameter is optional, if it is
+     *                       omitted then a page of reviews is returned.
+     * @param after          The ID of the last review of the previous page; omit it for the first page.
+     * @param limit          The maximum number of reviews in the page.
+     * @param includeEntries Whether to include the entries of the reviews in the page.
      * @return A list of reviews.
      */
     @GetMapping("/reviews")
-    public Iterable<Review> getReviews(@RequestParam(value = "productId", required = false) String productId) {
-        return Optional.ofNullable(productId).map(pid -> service.findByProductId(Integer.valueOf(pid))
-                .map(Arrays::asList)
-                .orElseGet(ArrayList::new)).orElse(service.findAll());
+    public ResponseEntity<List<Review>> getReviews(
+            @RequestParam(value = "productId", required = false) String productId,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @RequestParam(value = "includeEntries", defaultValue = "true") boolean includeEntries) {
+        if (productId != null) {
+            return ResponseEntity.ok(service.findByProductId(Integer.valueOf(productId))
+                    .map(List::of)
+                    .orElseGet(List::of));
+        }
+
+        var pageSize = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        var page = service.findPage(after, pageSize, includeEntries);
+        if (page.size() < pageSize) {
+            return ResponseEntity.ok(page);
+        }
+        var next = UriComponentsBuilder.fromPath("/reviews")
+                .queryParam("after", page.getLast().getId())
+                .queryParam("limit", pageSize)
+                .queryParam("includeEntries", includeEntries)
+                .build()
+                .toUriString();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+                .body(page);
+    }
+
+    /**
+     * Returns the number of entries and the date of the latest entry of the reviews of the specified products, as
+     * shown on product pages. The entries themselves are not read.
+     *
+     * @param productIds The product IDs.
+     * @return One summary per product ID, in the same order, or 400 Bad Request if there are too many.
+     */
+    @GetMapping("/reviews/summary")
+    public ResponseEntity<List<ReviewSummary>> getReviewSummaries(@RequestParam List<Integer> productIds) {
+        if (productIds.size() > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(service.findSummaries(productIds));
+    }
+
+    /**
+     * Searches the text of the review entries, for example for moderation. Words are matched whole, without stemming,
+     * and the entries of the most relevant reviews come first.
+     *
+     * @param q      The words to search for; a leading "-" excludes a word and quotes search for a phrase.
+     * @param offset The number of matching entries to skip.
+     * @param limit  The maximum number of matching entries to return.
+     * @return The matching entries with their product IDs, or 400 Bad Request if there is nothing to search for.
+     */
+    @GetMapping("/reviews/search")
+    public ResponseEntity<List<ReviewSearchHit>> searchReviews(
+            @RequestParam String q,
+            @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        if (q.isBlank() || offset < 0 || offset > MAX_OFFSET) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(service.search(q, offset, Math.clamp(limit, 1, MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * Returns the review entries written by the specified user, newest first, as shown on reviewer profile pages.
+     *
+     * @param username The username of the reviewer.
+     * @param offset   The number of entries to skip.
+     * @param limit    The maximum number of entries to return.
+     * @return The entries of the user with their product IDs.
+     */
+    @GetMapping("/reviews/by-user/{username}")
+    public ResponseEntity<List<ProductReviewEntry>> getReviewsByUser(
+            @PathVariable String username,
+            @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        if (offset < 0 || offset > MAX_OFFSET) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(service.findByUsername(username, offset, Math.clamp(limit, 1, MAX_PAGE_SIZE)));
     }
 
     /**
      * Creates a new review.
      *
      * @param review The review to create.
-     * @return The newly created review.
+     * @return The newly created review, or 409 Conflict if the product already has a review.
      */
     @PostMapping("/review")
     public ResponseEntity<Review> createReview(@RequestBody Review review) {
@@ -75,8 +219,14 @@ public class ReviewController {
         // Set the date for any entries in the review to now since we're creating the review now
         review.getEntries().forEach(entry -> entry.setDate(new Date()));
 
-        // Save the review to the database
-        var newReview = service.save(review);
+        // Save the review to the database; the unique productId index rejects a second review for the product
+        Review newReview;
+        try {
+            newReview = service.save(review);
+        } catch (DuplicateKeyException e) {
+            log.info("Product id: {} already has a review", review.getProductId());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
         log.info("Saved review: {}", newReview);
 
         try {
@@ -91,25 +241,105 @@ public class ReviewController {
     }
 
     /**
-     * Creates a new review entry for the review with the specified productId.
+     * Replaces the entries of the review with the specified ID, such as after moderation. The ETag of the review the
+     * client read must be sent in If-Match; the update is applied only if the review still has that version.
+     * If-Match: * applies the update to whatever version the review has.
+     *
+     * @param review  The review, with its new entries.
+     * @param id      The ID of the review to update.
+     * @param ifMatch The ETag of the version of the review the update is based on, or "*".
+     * @return The updated review, or one of the following error statuses:
+     * BAD_REQUEST if If-Match does not hold a single strong version or "*"
+     * NOT_FOUND if there is no review with the specified ID
+     * CONFLICT if the review has another version
+     * PRECONDITION_FAILED if If-Match is "*" and there is no review with the specified ID
+     */
+    @PutMapping("/review/{id}")
+    public ResponseEntity<Review> updateReview(@RequestBody Review review,
+                                               @PathVariable String id,
+                                               @RequestHeader(HttpHeaders.IF_MATCH) String ifMatch) {
+        var anyVersion = isAnyVersion(ifMatch);
+        var expectedVersion = anyVersion ? null : parseVersion(ifMatch);
+        if (!anyVersion && expectedVersion == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.info("Updating review with ID: {} at version {}, {}", id, anyVersion ? ANY_VERSION : expectedVersion,
+                review);
+
+        // Entries that are new to the review are dated now
+        review.setId(id);
+        review.getEntries().stream()
+                .filter(entry -> entry.getDate() == null)
+                .forEach(entry -> entry.setDate(new Date()));
+
+        Optional<Review> updatedReview;
+        if (anyVersion) {
+            updatedReview = atCurrentVersion(id, version -> service.update(review, version));
+            if (updatedReview.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+        } else {
+            updatedReview = service.update(review, expectedVersion);
+            if (updatedReview.isEmpty()) {
+                return conflictOrNotFound(id);
+            }
+        }
+
+        try {
+            return ResponseEntity
+                    .ok()
+                    .location(new URI("/review/" + id))
+                    .eTag(Integer.toString(updatedReview.get().getVersion()))
+                    .body(updatedReview.get());
+        } catch (URISyntaxException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Creates a new review entry for the review with the specified productId. If the client sends the ETag of the
+     * review in If-Match, the entry is only added if the review still has that version; If-Match: * only adds it to an
+     * existing review, instead of creating one.
      *
      * @param productId The productId of the review to which to add the new review entry.
      * @param entry     The entry to add to the review.
-     * @return The complete updated review.
+     * @param ifMatch   The ETag of the version of the review the entry is based on, or "*"; optional.
+     * @return The updated review, carrying only the new entry, 400 Bad Request if If-Match does not hold a single
+     * strong version or "*", 409 Conflict if the review has another version, or 412 Precondition Failed if If-Match is
+     * "*" and the product has no review.
      */
     @PostMapping("/review/{productId}/entry")
-    public ResponseEntity<Review> addEntryToReview(@PathVariable Integer productId, @RequestBody ReviewEntry entry) {
+    public ResponseEntity<Review> addEntryToReview(@PathVariable Integer productId,
+                                                   @RequestBody ReviewEntry entry,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                                   String ifMatch) {
         log.info("Add review entry for product id: {}, {}", productId, entry);
 
-        // Retrieve the review for the specified productId; if there is no review, create a new one
-        var review = service.findByProductId(productId).orElseGet(() -> Review.builder().productId(productId).build());
-
-        // Add this new entry to the review
-        entry.setDate(new Date());
-        review.getEntries().add(entry);
-
-        // Save the review
-        var updatedReview = service.save(review);
+        Review updatedReview;
+        if (ifMatch == null) {
+            // Append the entry in place; the review is created if the product has none yet
+            updatedReview = service.addEntry(productId, entry);
+        } else if (isAnyVersion(ifMatch)) {
+            var conditionalReview = service.findByProductId(productId)
+                    .flatMap(review -> atCurrentVersion(review.getId(),
+                            version -> service.addEntry(productId, entry, version)));
+            if (conditionalReview.isEmpty()) {
+                log.info("Product id: {} has no review to match", productId);
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+            updatedReview = conditionalReview.get();
+        } else {
+            var expectedVersion = parseVersion(ifMatch);
+            if (expectedVersion == null) {
+                return ResponseEntity.badRequest().build();
+            }
+            var conditionalReview = service.addEntry(productId, entry, expectedVersion);
+            if (conditionalReview.isEmpty()) {
+                log.info("Review of product id: {} is not at version {}", productId, expectedVersion);
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+            updatedReview = conditionalReview.get();
+        }
         log.info("Updated review: {}", updatedReview);
 
         try {
@@ -125,15 +355,82 @@ public class ReviewController {
     }
 
     /**
-     * Deletes the review with the specified ID. Note that this is the review ID, not the product ID.
+     * Imports review entries, such as those of a partner, from newline-delimited JSON with one entry and its
+     * productId per line. The body is streamed, so imports of any size can be sent in one request.
      *
-     * @param id The ID of the review to delete.
-     * @return A 200 OK on success, a 404 Not Found if the review does not exist.
+     * @param body The NDJSON request body.
+     * @return The number of entries imported and the lines that failed.
+     * @throws IOException If the request body cannot be read.
+     */
+    @PostMapping(value = "/reviews/import", consumes = NDJSON)
+    public ResponseEntity<ImportResult> importEntries(InputStream body) throws IOException {
+        log.info("Importing review entries");
+        try (var lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            return ResponseEntity.ok(service.importEntries(lines));
+        }
+    }
+
+    /**
+     * Exports all reviews as newline-delimited JSON, one review per line. The reviews are streamed from a database
+     * cursor straight to the response, and compressed with gzip if the client accepts it. The response has no async
+     * timeout (spring.mvc.async.request-timeout), so that an export of any size can complete.
+     *
+     * @param fields         The fields of each review to export; all fields if omitted.
+     * @param acceptEncoding The encodings the client accepts.
+     * @return The streamed reviews, or 400 Bad Request for an unknown field.
+     */
+    @GetMapping(value = "/reviews/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportReviews(
+            @RequestParam(value = "fields", required = false) Set<String> fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (fields != null && !EXPORT_FIELDS.containsAll(fields)) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.info("Exporting reviews with fields: {}", fields == null ? "all" : fields);
+
+        var gzip = acceptsGzip(acceptEncoding);
+        var response = ResponseEntity.ok().header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (!gzip) {
+            return response.body(out -> service.exportReviews(fields, out));
+        }
+        return response
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body(out -> {
+                    var compressed = new GZIPOutputStream(out, EXPORT_BUFFER_SIZE);
+                    service.exportReviews(fields, compressed);
+                    compressed.finish();
+                });
+    }
+
+    /**
+     * Deletes the review with the specified ID. Note that this is the review ID, not the product ID. If the client
+     * sends the ETag of the review in If-Match, the review is only deleted if it still has that version.
+     *
+     * @param id      The ID of the review to delete.
+     * @param ifMatch The ETag of the version of the review to delete, or "*"; optional.
+     * @return A 200 OK on success, a 400 Bad Request if If-Match does not hold a single strong version or "*", a 404
+     * Not Found if the review does not exist, a 409 Conflict if it has another version, or a 412 Precondition Failed if
+     * If-Match is "*" and the review does not exist.
      */
     @DeleteMapping("/review/{id}")
-    public ResponseEntity<?> deleteReview(@PathVariable String id) {
+    public ResponseEntity<?> deleteReview(@PathVariable String id,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                          String ifMatch) {
         log.info("Deleting review with ID {}", id);
 
+        if (ifMatch != null && isAnyVersion(ifMatch)) {
+            return atCurrentVersion(id, version -> Optional.of(service.delete(id, version)).filter(deleted -> deleted))
+                    .map(deleted -> ResponseEntity.ok().build())
+                    .orElse(ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build());
+        }
+        if (ifMatch != null) {
+            var expectedVersion = parseVersion(ifMatch);
+            if (expectedVersion == null) {
+                return ResponseEntity.badRequest().build();
+            }
+            return service.delete(id, expectedVersion) ? ResponseEntity.ok().build() : conflictOrNotFound(id);
+        }
+
         // Get the existing product
         var existingReview = service.findById(id);
 
@@ -143,4 +440,101 @@ public class ReviewController {
             return ResponseEntity.ok().build();
         }).orElse(ResponseEntity.notFound().build());
     }
+
+    /**
+     * Tells why a conditional write to the review with the specified ID matched nothing: either the review does not
+     * exist or another write changed its version.
+     */
+    private <T> ResponseEntity<T> conflictOrNotFound(String id) {
+        if (service.findVersion(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        log.info("Review with ID: {} has another version", id);
+        return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    /**
+     * Makes a conditional write to the review with the specified ID on behalf of If-Match: *, which matches whatever
+     * version the review has: the write is made at the current version, and made again at the new one if another write
+     * changed it in between.
+     *
+     * @return The result of the write, or empty if the review does not exist.
+     */
+    private <T> Optional<T> atCurrentVersion(String id, IntFunction<Optional<T>> write) {
+        for (var version = service.findVersion(id); version.isPresent(); version = service.findVersion(id)) {
+            var result = write.apply(version.get());
+            if (result.isPresent()) {
+                return result;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns whether an Accept-Encoding header accepts gzip, either by name or through "*", with a non-zero quality.
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (var coding : acceptEncoding.split(",")) {
+            var parameters = coding.split(";");
+            var quality = 1.0;
+            for (int i = 1; i < parameters.length; i++) {
+                var parameter = parameters[i].trim().toLowerCase(Locale.ROOT);
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            var name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = quality;
+            } else if (name.equals("*")) {
+                any = quality;
+            }
+        }
+        return gzip != null ? gzip > 0 : any != null && any > 0;
+    }
+
+    /**
+     * Returns whether an If-Match header is "*", which matches any version of an existing review.
+     */
+    private static boolean isAnyVersion(String ifMatch) {
+        return ifMatch.trim().equals(ANY_VERSION);
+    }
+
+    /**
+     * Returns the review version held in an If-Match header, or null if it does not hold a single strong version.
+     * If-Match compares entity tags strongly, so a weak tag can never match.
+     */
+    private static Integer parseVersion(String ifMatch) {
+        if (ifMatch.trim().startsWith("W/")) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(versionOf(ifMatch));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the version in an entity tag as sent back by clients, which may quote it and mark it as weak.
+     */
+    private static String versionOf(String entityTag) {
+        var tag = entityTag.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        return tag;
+    }
 }
@@ -0,0 +1,109 @@
+package com.coloza.demo.springtest.cache;
+
+import com.coloza.demo.springtest.model.Review;
+import com.coloza.demo.springtest.model.ReviewEntry;
+import com.coloza.demo.springtest.service.ReviewService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.function.BooleanSupplier;
+
+@Testcontainers
+@SpringBootTest
+@TestPropertySource(properties = "reviews.cache.enabled=true")
+class ReviewCacheTest {
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:8.2");
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ReviewService service;
+
+    @Autowired
+    private ReviewCache cache;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static final File SAMPLE_JSON = Paths.get("src", "test", "resources", "data", "sample.json").toFile();
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        var objects = mapper.readValue(SAMPLE_JSON, Review[].class);
+        Arrays.stream(objects).forEach(mongoTemplate::save);
+        Assertions.assertTrue(waitFor(cache::isWatching), "The change stream should be open");
+    }
+
+    @AfterEach
+    void afterEach() {
+        // Deleting rather than dropping keeps the change stream open
+        mongoTemplate.remove(new Query(), Review.class);
+        waitFor(() -> cache.size() == 0);
+    }
+
+    @Test
+    void testWriteOnAnotherInstanceEvictsTheReview() {
+        var review = service.findByProductId(1);
+        Assertions.assertTrue(review.isPresent(), "There should be a review for product ID 1");
+        Assertions.assertSame(review.get(), service.findByProductId(1).get(), "The second read should be cached");
+
+        // Another instance adds an entry behind this one's back
+        mongoTemplate.updateFirst(Query.query(Criteria.where("productId").is(1)),
+                new Update().push("entries", new ReviewEntry("test-user", new Date(), "Great product")),
+                Review.class);
+
+        Assertions.assertTrue(waitFor(() -> cache.size() == 0), "The change should evict the review");
+        Assertions.assertEquals(2, service.findByProductId(1).orElseThrow().getEntries().size(),
+                "The new entry should be read");
+    }
+
+    @Test
+    void testNewReviewReplacesCachedAbsence() {
+        Assertions.assertFalse(service.findByProductId(10).isPresent(), "Product 10 should have no review yet");
+
+        mongoTemplate.insert(Review.builder().productId(10).version(1).build());
+
+        Assertions.assertTrue(waitFor(() -> service.findByProductId(10).isPresent()),
+                "The new review should be read");
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) {
+        for (int i = 0; i < 50; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return condition.getAsBoolean();
+    }
+}
@@ -2,6 +2,7 @@ package com.coloza.demo.springtest.integration;
 
 import com.coloza.demo.springtest.model.Review;
 import com.coloza.demo.springtest.model.ReviewEntry;
+import com.coloza.demo.springtest.repository.ReviewIndexManager;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -10,6 +11,7 @@ import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
 import org.bson.Document;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -27,12 +29,19 @@ import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.Matchers.any;
 import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @Testcontainers
@@ -56,6 +65,9 @@ class ReviewServiceIntegrationTest {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    @Autowired
+    private ReviewIndexManager indexManager;
+
     /**
      * MongoSpringExtension method that returns the autowired MongoTemplate to use for MongoDB interactions.
      *
@@ -167,17 +179,167 @@ class ReviewServiceIntegrationTest {
 
                 // Validate the response code and content type
                 .andExpect(status().isOk())
-                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2\""))
                 .andExpect(header().string(HttpHeaders.LOCATION, "/review/1"))
 
-                // Validate the returned fields
+                // Validate the returned fields: only the new entry is sent back
                 .andExpect(jsonPath("$.id", is("1")))
                 .andExpect(jsonPath("$.productId", is(1)))
+                .andExpect(jsonPath("$.version", is(2)))
+                .andExpect(jsonPath("$.entries.length()", is(1)))
+                .andExpect(jsonPath("$.entries[0].username", is("test-user")))
+                .andExpect(jsonPath("$.entries[0].review", is("Great product")))
+                .andExpect(jsonPath("$.entries[0].date", any(String.class)));
+
+        // The stored review keeps both entries
+        mockMvc.perform(get("/review/{id}", 1))
+                .andExpect(status().isOk())
                 .andExpect(jsonPath("$.entries.length()", is(2)))
                 .andExpect(jsonPath("$.entries[0].username", is("user1")))
-                .andExpect(jsonPath("$.entries[0].review", is("This is a review")))
-                .andExpect(jsonPath("$.entries[1].username", is("test-user")))
-                .andExpect(jsonPath("$.entries[1].review", is("Great product")))
-                .andExpect(jsonPath("$.entries[1].date", any(String.class)));
+                .andExpect(jsonPath("$.entries[1].username", is("test-user")));
+    }
+
+    @Test
+    @DisplayName("POST /review - Conflict")
+    void testCreateReviewConflict() throws Exception {
+        // The sample data is loaded after the startup index build, so build the indexes again
+        indexManager.ensureIndexes();
+        var postReviewEntry = ReviewEntry.builder().username("test-user").review("Great product").build();
+        var postReview = Review.builder().productId(1).entries(List.of(postReviewEntry)).build();
+
+        mockMvc.perform(post("/review")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(postReview)))
+
+                // Validate that product 1 keeps its single review
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @DisplayName("GET /admin/indexes")
+    void testGetIndexReport() throws Exception {
+        indexManager.ensureIndexes();
+        mockMvc.perform(get("/review/{id}", 1));
+        mockMvc.perform(get("/reviews").param("productId", "1"));
+
+        mockMvc.perform(get("/admin/indexes"))
+
+                // Validate the response code and content type
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+
+                // Validate the indexes and that no query scans the collection
+                .andExpect(jsonPath("$.indexes[?(@.name == 'productId_unique')].accesses").value(1))
+                .andExpect(jsonPath("$.queries.length()", is(4)))
+                .andExpect(jsonPath("$.queries[0].query", is("findByProductId")))
+                .andExpect(jsonPath("$.queries[0].collectionScan", is(false)))
+                .andExpect(jsonPath("$.queries[2].collectionScan", is(false)))
+                .andExpect(jsonPath("$.queries[3].collectionScan", is(false)))
+                .andExpect(jsonPath("$.failedIndexes.length()", is(0)));
+    }
+
+    @Test
+    @DisplayName("GET /admin/indexes - Failed Index")
+    void testGetIndexReportWithFailedIndex() throws Exception {
+        // A second review of product 1 keeps the unique index from being built
+        database.getCollection("Reviews").insertOne(new Document("productId", 1).append("version", 1));
+
+        var failures = indexManager.ensureIndexes();
+        Assertions.assertEquals(List.of("Reviews.productId_unique"), failures);
+
+        mockMvc.perform(get("/admin/indexes"))
+
+                // Validate that the failure is reported and the other indexes were still built
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.failedIndexes[0]", is("Reviews.productId_unique")))
+                .andExpect(jsonPath("$.indexes[?(@.name == 'entries_review_words')]").exists())
+                .andExpect(jsonPath("$.indexes[?(@.name == 'entries_username')]").exists());
+    }
+
+    @Test
+    @DisplayName("GET /reviews/export - Projected")
+    void testExportReviews() throws Exception {
+        var mvcResult = mockMvc.perform(get("/reviews/export").param("fields", "productId,version"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        var body = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        // One line per review, with only the requested fields
+        Assertions.assertEquals(List.of("{\"productId\":1,\"version\":1}", "{\"productId\":2,\"version\":7}"),
+                body.lines().toList());
+    }
+
+    @Test
+    @DisplayName("GET /reviews/export - Gzip")
+    void testExportReviewsGzip() throws Exception {
+        var mvcResult = mockMvc.perform(get("/reviews/export").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        var body = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        try (var lines = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(body)), StandardCharsets.UTF_8))) {
+            var reviews = lines.lines().map(line -> {
+                try {
+                    return mapper.readValue(line, Review.class);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }).toList();
+            Assertions.assertEquals(2, reviews.size(), "Every review should be exported");
+            Assertions.assertEquals(3, reviews.get(1).getEntries().size(), "Review 2 should have all its entries");
+        }
+    }
+
+    @Test
+    @DisplayName("GET /review/2 - Not Modified")
+    void testGetReviewNotModified() throws Exception {
+        mockMvc.perform(get("/review/{id}", 2).header(HttpHeaders.IF_NONE_MATCH, "W/\"7\""))
+
+                // Validate that the unchanged review is not sent again
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"7\""))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @DisplayName("PUT /review/2 - Success, then Conflict")
+    void testUpdateReview() throws Exception {
+        var entry = ReviewEntry.builder().username("user2").review("This is an edited review").build();
+        var putReview = Review.builder().entries(List.of(entry)).build();
+
+        mockMvc.perform(put("/review/{id}", 2)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"7\"")
+                        .content(asJsonString(putReview)))
+
+                // Validate the response code and the incremented version
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"8\""))
+                .andExpect(jsonPath("$.version", is(8)))
+                .andExpect(jsonPath("$.entryCount", is(1)))
+                .andExpect(jsonPath("$.entries.length()", is(1)))
+                .andExpect(jsonPath("$.entries[0].review", is("This is an edited review")));
+
+        // A second update based on the same version lost the race
+        mockMvc.perform(put("/review/{id}", 2)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"7\"")
+                        .content(asJsonString(putReview)))
+                .andExpect(status().isConflict());
+
+        mockMvc.perform(put("/review/{id}", 99)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"1\"")
+                        .content(asJsonString(putReview)))
+                .andExpect(status().isNotFound());
     }
 }
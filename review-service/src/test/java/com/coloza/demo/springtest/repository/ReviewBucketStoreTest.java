@@ -0,0 +1,281 @@
+package com.coloza.demo.springtest.repository;
+
+import com.coloza.demo.springtest.config.ReviewProperties;
+import com.coloza.demo.springtest.model.Review;
+import com.coloza.demo.springtest.model.ReviewBucket;
+import com.coloza.demo.springtest.model.ReviewEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+@Testcontainers
+@SpringBootTest
+@TestPropertySource(properties = {"reviews.buckets.enabled=true", "reviews.buckets.size=2"})
+class ReviewBucketStoreTest {
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:8.2");
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ReviewRepository repository;
+
+    @Autowired
+    private ReviewIndexManager indexManager;
+
+    @Autowired
+    private ReviewProperties properties;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static final File SAMPLE_JSON = Paths.get("src", "test", "resources", "data", "sample.json").toFile();
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        var objects = mapper.readValue(SAMPLE_JSON, Review[].class);
+        Arrays.stream(objects).forEach(mongoTemplate::save);
+    }
+
+    @AfterEach
+    void afterEach() {
+        mongoTemplate.dropCollection("Reviews");
+        mongoTemplate.dropCollection("ReviewBuckets");
+    }
+
+    @Test
+    void testAddEntryMovesEntriesToBuckets() {
+        var review = repository.addEntry(2, new ReviewEntry("test-user", new Date(), "This is a fourth review"));
+
+        // Only the new entry comes back, with the incremented version and count
+        Assertions.assertEquals("2", review.getId(), "The existing review should be updated");
+        Assertions.assertEquals(8, review.getVersion().intValue(), "Review version should be incremented");
+        Assertions.assertEquals(4, review.getEntryCount().intValue(), "The entry count should include the new entry");
+        Assertions.assertEquals(1, review.getEntries().size(), "Only the new entry should be returned");
+
+        // The review document no longer holds the entries; three buckets of at most two entries do
+        var storedDocument = mongoTemplate.findById("2", Review.class);
+        Assertions.assertNotNull(storedDocument);
+        Assertions.assertTrue(storedDocument.getEntries().isEmpty(), "The entries should have been moved");
+        var buckets = mongoTemplate.findAll(ReviewBucket.class);
+        Assertions.assertEquals(3, buckets.size(), "The entries should fill three buckets");
+        buckets.forEach(bucket -> Assertions.assertTrue(bucket.getEntries().size() <= 2, "Buckets are bounded"));
+
+        // Readers still see every entry, in order
+        var storedReview = repository.findById("2");
+        Assertions.assertTrue(storedReview.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(List.of("user2", "user3", "user4", "test-user"),
+                storedReview.get().getEntries().stream().map(ReviewEntry::getUsername).toList());
+    }
+
+    @Test
+    void testConcurrentAddEntryLosesNothing() {
+        IntStream.range(0, 20).parallel()
+                .forEach(i -> repository.addEntry(1, new ReviewEntry("user-" + i, new Date(), "Review " + i)));
+
+        var review = repository.findByProductId(1);
+        Assertions.assertTrue(review.isPresent(), "There should be a review for product ID 1");
+        Assertions.assertEquals(21, review.get().getEntries().size(), "No entry should be lost");
+        Assertions.assertEquals(21, review.get().getEntryCount().intValue(), "Every entry should be counted");
+        Assertions.assertEquals("user1", review.get().getEntries().getFirst().getUsername(),
+                "The migrated entry should come first");
+    }
+
+    @Test
+    void testFindAllAndPages() {
+        repository.addEntry(1, new ReviewEntry("test-user", new Date(), "This is a review"));
+
+        var reviews = repository.findAll();
+        Assertions.assertEquals(2, reviews.size(), "Should be 2 reviews in the database");
+        Assertions.assertEquals(2, reviews.getFirst().getEntries().size(), "Review 1 should have 2 entries");
+        Assertions.assertEquals(3, reviews.get(1).getEntries().size(), "Review 2 should be untouched");
+
+        var page = repository.findPage(null, 1, true);
+        Assertions.assertEquals(2, page.getFirst().getEntries().size(), "Pages should include bucketed entries");
+    }
+
+    @Test
+    void testDelete() {
+        repository.addEntry(2, new ReviewEntry("test-user", new Date(), "This is a fourth review"));
+
+        repository.deleteById("2");
+
+        Assertions.assertFalse(repository.findById("2").isPresent(), "Review 2 should now be deleted");
+        Assertions.assertTrue(mongoTemplate.findAll(ReviewBucket.class).isEmpty(), "Its buckets should be deleted");
+    }
+
+    @Test
+    void testFindEntries() {
+        // Migrated buckets are never appended to: user2 user3 | user4 | e0 e1 | e2
+        IntStream.range(0, 3).forEach(i -> repository.addEntry(2, new ReviewEntry("e" + i, new Date(), "Review " + i)));
+
+        var oldest = repository.findEntries("2", 1, 3, false);
+        Assertions.assertTrue(oldest.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(List.of("user3", "user4", "e0"),
+                oldest.get().stream().map(ReviewEntry::getUsername).toList());
+
+        var newest = repository.findEntries("2", 0, 3, true);
+        Assertions.assertTrue(newest.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(List.of("e2", "e1", "e0"),
+                newest.get().stream().map(ReviewEntry::getUsername).toList());
+    }
+
+    @Test
+    void testConditionalAddEntry() {
+        var stale = repository.addEntry(2, new ReviewEntry("test-user", new Date(), "Stale review"), 6);
+        Assertions.assertTrue(stale.isEmpty(), "A stale version should be rejected");
+
+        var review = repository.addEntry(2, new ReviewEntry("test-user", new Date(), "Fresh review"), 7);
+        Assertions.assertTrue(review.isPresent(), "The current version should be accepted");
+        Assertions.assertEquals(8, review.get().getVersion().intValue(), "Review version should be incremented");
+
+        // Only the accepted entry was appended to a bucket
+        var storedReview = repository.findById("2");
+        Assertions.assertTrue(storedReview.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(List.of("user2", "user3", "user4", "test-user"),
+                storedReview.get().getEntries().stream().map(ReviewEntry::getUsername).toList());
+        Assertions.assertEquals(4, storedReview.get().getEntryCount().intValue(), "Only one entry should be counted");
+    }
+
+    @Test
+    void testConcurrentConditionalAddEntryAppendsOnce() {
+        repository.addEntry(2, new ReviewEntry("test-user", new Date(), "This is a fourth review"));
+
+        // Every write expects version 8, so one wins and the entries of the others are removed again
+        var accepted = IntStream.range(0, 20).parallel()
+                .mapToObj(i -> repository.addEntry(2, new ReviewEntry("user-" + i, new Date(), "Review " + i), 8))
+                .filter(Optional::isPresent)
+                .count();
+        Assertions.assertEquals(1, accepted, "Only one write should be accepted");
+
+        var storedReview = repository.findById("2");
+        Assertions.assertTrue(storedReview.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(5, storedReview.get().getEntries().size(), "Only the accepted entry should be stored");
+        Assertions.assertEquals(5, storedReview.get().getEntryCount().intValue(), "Only one entry should be counted");
+        Assertions.assertEquals(9, storedReview.get().getVersion().intValue(),
+                "The version should be incremented once");
+        Assertions.assertEquals(5, mongoTemplate.findAll(ReviewBucket.class).stream()
+                .mapToInt(ReviewBucket::getCount).sum(), "The bucket counts should match their entries");
+    }
+
+    @Test
+    void testReplaceEntriesDropsBuckets() {
+        repository.addEntry(2, new ReviewEntry("test-user", new Date(), "This is a fourth review"));
+
+        var stale = repository.replaceEntries("2", 7, List.of());
+        Assertions.assertTrue(stale.isEmpty(), "A stale version should be rejected");
+
+        var review = repository.replaceEntries("2", 8,
+                List.of(new ReviewEntry("user2", new Date(), "This is an edited review")));
+        Assertions.assertTrue(review.isPresent(), "The current version should be accepted");
+        Assertions.assertEquals(9, review.get().getVersion().intValue(), "Review version should be incremented");
+
+        Assertions.assertTrue(mongoTemplate.findAll(ReviewBucket.class).isEmpty(), "The old buckets should be deleted");
+        var storedReview = repository.findById("2");
+        Assertions.assertTrue(storedReview.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(1, storedReview.get().getEntries().size(), "Only the new entry should remain");
+        Assertions.assertEquals(1, storedReview.get().getEntryCount().intValue(), "The count should be recomputed");
+    }
+
+    @Test
+    void testReplaceEntriesDropsBucketsAfterBucketsAreDisabled() {
+        repository.addEntry(2, new ReviewEntry("test-user", new Date(), "This is a fourth review"));
+        indexManager.ensureIndexes();
+
+        properties.getBuckets().setEnabled(false);
+        try {
+            var review = repository.replaceEntries("2", 8,
+                    List.of(new ReviewEntry("user2", new Date(), "This is an edited review")));
+            Assertions.assertTrue(review.isPresent(), "The current version should be accepted");
+            Assertions.assertEquals(1, review.get().getEntries().size(), "The new entry should be returned");
+            Assertions.assertNull(review.get().getLatestBucket(), "The review should no longer use buckets");
+        } finally {
+            properties.getBuckets().setEnabled(true);
+        }
+
+        Assertions.assertTrue(mongoTemplate.findAll(ReviewBucket.class).isEmpty(), "The old buckets should be deleted");
+        Assertions.assertTrue(repository.findByUsername("test-user", 0, 10).isEmpty(),
+                "The replaced entry should not be found by username");
+        Assertions.assertTrue(repository.search("fourth", 0, 10).isEmpty(),
+                "The replaced entry should not be found by search");
+    }
+
+    @Test
+    void testMigrationAfterBucketingWasTurnedOffAndOn() {
+        repository.addEntry(2, new ReviewEntry("first-bucketed", new Date(), "Added while bucketing was on"));
+
+        properties.getBuckets().setEnabled(false);
+        try {
+            repository.addEntry(2, new ReviewEntry("first-inline", new Date(), "Added while bucketing was off"));
+            repository.addEntry(2, new ReviewEntry("second-inline", new Date(), "Added while bucketing was off"));
+        } finally {
+            properties.getBuckets().setEnabled(true);
+        }
+        var review = repository.addEntry(2, new ReviewEntry("second-bucketed", new Date(), "Added once it was on"));
+        Assertions.assertEquals(7, review.getEntryCount().intValue(), "Every entry should be counted once");
+
+        // The second migration writes new buckets instead of overwriting those of the first one
+        var storedDocument = mongoTemplate.findById("2", Review.class);
+        Assertions.assertNotNull(storedDocument);
+        Assertions.assertTrue(storedDocument.getEntries().isEmpty(), "The entries should have been moved");
+        Assertions.assertEquals(List.of(7, 10), storedDocument.getMigrations(), "Both migrations should be recorded");
+
+        var storedReview = repository.findById("2");
+        Assertions.assertTrue(storedReview.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(List.of("first-bucketed", "first-inline", "second-bucketed", "second-inline", "user2",
+                        "user3", "user4"),
+                storedReview.get().getEntries().stream().map(ReviewEntry::getUsername).sorted().toList(),
+                "No entry should be lost");
+        Assertions.assertEquals(7, storedReview.get().getEntryCount().intValue(), "The count should be unchanged");
+        Assertions.assertEquals(7, repository.findEntries("2", 0, 10, false).orElseThrow().size(),
+                "Every entry should be paged through");
+    }
+
+    @Test
+    void testBucketsOfUnfinishedMigrationAreIgnored() {
+        // A migration wrote the bucket of review 1 but stopped before switching the review over
+        var review = mongoTemplate.findById("1", Review.class);
+        Assertions.assertNotNull(review);
+        mongoTemplate.save(ReviewBucket.builder()
+                .id("migrated-1-1-000000")
+                .productId(1)
+                .count(1)
+                .migrated(true)
+                .migration(1)
+                .entries(new ArrayList<>(review.getEntries()))
+                .build());
+        indexManager.ensureIndexes();
+
+        Assertions.assertEquals(1, repository.findByUsername("user1", 0, 10).size(),
+                "The entry should only be found in the review document");
+        Assertions.assertEquals(1, repository.search("review", 0, 10).stream()
+                .filter(hit -> hit.getProductId() == 1).count(), "The entry should only be found once");
+        Assertions.assertEquals(1, repository.findById("1").orElseThrow().getEntries().size(),
+                "The review should not read the bucket either");
+    }
+}
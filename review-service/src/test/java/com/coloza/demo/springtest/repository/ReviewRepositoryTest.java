@@ -2,6 +2,7 @@ package com.coloza.demo.springtest.repository;
 
 import com.coloza.demo.springtest.model.Review;
 import com.coloza.demo.springtest.model.ReviewEntry;
+import com.coloza.demo.springtest.model.ReviewSearchHit;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -21,6 +22,8 @@ import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 @Testcontainers
 @SpringBootTest
@@ -39,6 +42,9 @@ class ReviewRepositoryTest {
     @Autowired
     private ReviewRepository repository;
 
+    @Autowired
+    private ReviewIndexManager indexManager;
+
     /**
      * Jackson ObjectMapper: used to load a JSON file into a list of Reviews
      */
@@ -148,4 +154,145 @@ class ReviewRepositoryTest {
         var review = repository.findById("2");
         Assertions.assertFalse(review.isPresent(), "Review 2 should now be deleted from the database");
     }
+
+    @Test
+    void testAddEntry() {
+        var review = repository.addEntry(2, new ReviewEntry("test-user", new Date(), "This is a fourth review"));
+
+        // Only the new entry comes back, with the incremented version
+        Assertions.assertEquals("2", review.getId(), "The existing review should be updated");
+        Assertions.assertEquals(8, review.getVersion().intValue(), "Review version should be incremented");
+        Assertions.assertEquals(1, review.getEntries().size(), "Only the new entry should be returned");
+        Assertions.assertEquals("test-user", review.getEntries().get(0).getUsername());
+
+        var storedReview = repository.findById("2");
+        Assertions.assertTrue(storedReview.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(4, storedReview.get().getEntries().size(), "There should be 4 review entries");
+    }
+
+    @Test
+    void testAddEntryCreatesReview() {
+        var review = repository.addEntry(10, new ReviewEntry("test-user", new Date(), "This is a review"));
+
+        Assertions.assertNotNull(review.getId(), "A review should be created");
+        Assertions.assertEquals(10, review.getProductId().intValue());
+        Assertions.assertEquals(1, review.getVersion().intValue(), "A new review should start at version 1");
+        Assertions.assertEquals(1, review.getEntries().size(), "The new review should have one entry");
+    }
+
+    @Test
+    void testConcurrentAddEntryLosesNothing() {
+        var entries = IntStream.range(0, 20).parallel()
+                .mapToObj(i -> repository.addEntry(1, new ReviewEntry("user-" + i, new Date(), "Review " + i)))
+                .toList();
+        Assertions.assertEquals(20, entries.size());
+
+        var review = repository.findByProductId(1);
+        Assertions.assertTrue(review.isPresent(), "There should be a review for product ID 1");
+        Assertions.assertEquals(21, review.get().getEntries().size(), "No entry should be lost");
+        Assertions.assertEquals(21, review.get().getVersion().intValue(), "Every entry should bump the version");
+    }
+
+    @Test
+    void testFindPage() {
+        // A review created through the API gets an ObjectId, which sorts after the string IDs of the sample data
+        var savedReview = repository.save(Review.builder().productId(10).version(1).build());
+
+        var firstPage = repository.findPage(null, 2, false);
+        Assertions.assertEquals(List.of("1", "2"), firstPage.stream().map(Review::getId).toList());
+        Assertions.assertTrue(firstPage.get(1).getEntries().isEmpty(), "Entries should not be loaded");
+
+        var secondPage = repository.findPage("2", 2, true);
+        Assertions.assertEquals(List.of(savedReview.getId()), secondPage.stream().map(Review::getId).toList(),
+                "The page after the last string ID should continue with the ObjectIds");
+
+        Assertions.assertTrue(repository.findPage(savedReview.getId(), 2, true).isEmpty(), "There should be no more");
+    }
+
+    @Test
+    void testFindEntries() {
+        var oldest = repository.findEntries("2", 1, 5, false);
+        Assertions.assertTrue(oldest.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(List.of("user3", "user4"), oldest.get().stream().map(ReviewEntry::getUsername).toList());
+
+        var newest = repository.findEntries("2", 0, 2, true);
+        Assertions.assertTrue(newest.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(List.of("user4", "user3"), newest.get().stream().map(ReviewEntry::getUsername).toList());
+
+        Assertions.assertFalse(repository.findEntries("99", 0, 2, true).isPresent(), "Review 99 should not be found");
+    }
+
+    @Test
+    void testSummaries() {
+        // The sample reviews were stored without counters
+        repository.backfillCounters();
+        var date = new Date();
+        repository.addEntry(2, new ReviewEntry("test-user", date, "This is a fourth review"));
+
+        var summaries = repository.findSummaries(List.of(1, 2, 99));
+        Assertions.assertEquals(2, summaries.size(), "Only products with a review should have a summary");
+        var summary = summaries.stream().filter(s -> s.getProductId() == 2).findFirst().orElseThrow();
+        Assertions.assertEquals(4, summary.getEntryCount().intValue(), "Review 2 should have 4 entries");
+        Assertions.assertEquals(date, summary.getLatestEntryDate(), "The latest entry should be the new one");
+    }
+
+    @Test
+    void testAddEntries() {
+        var date = new Date();
+        var failures = repository.addEntries(Map.of(
+                2, List.of(new ReviewEntry("user5", date, "Review 5"), new ReviewEntry("user6", date, "Review 6")),
+                10, List.of(new ReviewEntry("user7", date, "Review 7"))));
+        Assertions.assertTrue(failures.isEmpty(), "Every product should be written");
+
+        var review = repository.findByProductId(2);
+        Assertions.assertTrue(review.isPresent(), "Review 2 should be present");
+        Assertions.assertEquals(5, review.get().getEntries().size(), "Both entries should be appended");
+        Assertions.assertEquals(8, review.get().getVersion().intValue(), "The version should be incremented once");
+
+        var newReview = repository.findByProductId(10);
+        Assertions.assertTrue(newReview.isPresent(), "A review should be created for product 10");
+        Assertions.assertEquals(1, newReview.get().getEntryCount().intValue());
+    }
+
+    @Test
+    void testSearch() {
+        // The collection is dropped after each test, so its indexes have to be created again
+        indexManager.ensureIndexes();
+
+        var hits = repository.search("third", 0, 10);
+        Assertions.assertEquals(1, hits.size(), "Only one entry mentions a third review");
+        Assertions.assertEquals(2, hits.getFirst().getProductId().intValue());
+        Assertions.assertEquals("user4", hits.getFirst().getUsername());
+
+        var page = repository.search("review", 1, 2);
+        Assertions.assertEquals(2, page.size(), "The second page of the 4 matching entries should be full");
+    }
+
+    @Test
+    void testSearchMatchesWholeWords() {
+        indexManager.ensureIndexes();
+        repository.addEntry(1, new ReviewEntry("user5", new Date(), "I reviewed the category page"));
+
+        Assertions.assertTrue(repository.search("cat", 0, 10).isEmpty(), "Parts of words should not match");
+
+        // Review 2 mentions "third", so only the entries of review 1 that contain the word "review" match
+        var hits = repository.search("Review -third", 0, 10);
+        Assertions.assertEquals(List.of("user1"), hits.stream().map(ReviewSearchHit::getUsername).toList());
+
+        var phrase = repository.search("\"another review\"", 0, 10);
+        Assertions.assertEquals(List.of("user3"), phrase.stream().map(ReviewSearchHit::getUsername).toList());
+    }
+
+    @Test
+    void testFindByUsername() {
+        repository.addEntry(1, new ReviewEntry("user3", new Date(), "Another review by user 3"));
+
+        var entries = repository.findByUsername("user3", 0, 10);
+        Assertions.assertEquals(2, entries.size(), "User 3 should have reviewed two products");
+        Assertions.assertEquals(1, entries.get(0).getProductId().intValue(), "The dated entry should come first");
+        Assertions.assertEquals("Another review by user 3", entries.get(0).getReview());
+        Assertions.assertEquals(2, entries.get(1).getProductId().intValue());
+
+        Assertions.assertTrue(repository.findByUsername("nobody", 0, 10).isEmpty(), "Nobody has no entries");
+    }
 }
@@ -1,7 +1,10 @@
 package com.coloza.demo.springtest.service;
 
+import com.coloza.demo.springtest.model.AppendFailure;
+import com.coloza.demo.springtest.model.ImportError;
 import com.coloza.demo.springtest.model.Review;
 import com.coloza.demo.springtest.model.ReviewEntry;
+import com.coloza.demo.springtest.model.ReviewSummary;
 import com.coloza.demo.springtest.repository.ReviewRepository;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
@@ -10,9 +13,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
+import java.io.BufferedReader;
+import java.io.StringReader;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -87,4 +93,62 @@ class ReviewServiceTest {
         Assertions.assertEquals(1, returnedReview.getVersion().intValue(),
                 "The version for a new review should be 1");
     }
+
+    @Test
+    @DisplayName("Test addEntry")
+    void testAddEntry() {
+        // Set up our mock
+        var entry = ReviewEntry.builder().username("test-user").review("Great product").build();
+        var mockReview = Review.builder().id("reviewId").productId(1).version(2).entries(List.of(entry)).build();
+        doReturn(mockReview).when(repository).addEntry(1, entry);
+
+        // Execute the service call
+        var returnedReview = service.addEntry(1, entry);
+
+        // Assert the response
+        Assertions.assertSame(mockReview, returnedReview, "The updated review should be returned");
+        Assertions.assertNotNull(entry.getDate(), "The entry should be dated now");
+    }
+
+    @Test
+    @DisplayName("Test findSummaries")
+    void testFindSummaries() {
+        // Set up our mock
+        var date = new Date();
+        doReturn(List.of(new ReviewSummary(1, 3, date))).when(repository).findSummaries(List.of(1, 2));
+
+        // Execute the service call
+        var summaries = service.findSummaries(List.of(1, 2));
+
+        // Assert the response: one summary per product, in order
+        Assertions.assertEquals(2, summaries.size(), "There should be one summary per product");
+        Assertions.assertEquals(3, summaries.get(0).getEntryCount().intValue());
+        Assertions.assertEquals(2, summaries.get(1).getProductId().intValue());
+        Assertions.assertEquals(0, summaries.get(1).getEntryCount().intValue(), "Product 2 has no review");
+    }
+
+    @Test
+    @DisplayName("Test importEntries")
+    void testImportEntries() throws Exception {
+        // Set up our mock: the second entry of product 2 is rejected by the database
+        doReturn(Map.of(2, new AppendFailure(1, "rejected"))).when(repository).addEntries(any());
+        var lines = """
+                {"productId": 1, "username": "user1", "review": "Great product"}
+                {"productId": 1, "username": "user2"
+                {"username": "user3", "review": "No product"}
+
+                {"productId": 2, "username": "user4", "review": "Appended"}
+                {"productId": 2, "username": "user5", "review": "Rejected"}
+                """;
+
+        // Execute the service call
+        var result = service.importEntries(new BufferedReader(new StringReader(lines)));
+
+        // Assert the response: every failed line is reported with its line number
+        Assertions.assertEquals(5, result.getLines(), "Blank lines should be skipped");
+        Assertions.assertEquals(2, result.getImported(), "Only the entries that were appended should be imported");
+        Assertions.assertEquals(3, result.getFailed(), "Three lines should fail");
+        Assertions.assertEquals(List.of(2L, 3L, 6L), result.getErrors().stream().map(ImportError::getLine).toList());
+        Assertions.assertEquals("rejected", result.getErrors().get(2).getMessage());
+    }
 }
@@ -1,7 +1,12 @@
 package com.coloza.demo.springtest.web;
 
+import com.coloza.demo.springtest.model.ImportError;
+import com.coloza.demo.springtest.model.ImportResult;
+import com.coloza.demo.springtest.model.ProductReviewEntry;
 import com.coloza.demo.springtest.model.Review;
 import com.coloza.demo.springtest.model.ReviewEntry;
+import com.coloza.demo.springtest.model.ReviewSearchHit;
+import com.coloza.demo.springtest.model.ReviewSummary;
 import com.coloza.demo.springtest.service.ReviewService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.DisplayName;
@@ -20,9 +25,15 @@ import java.util.Optional;
 
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
@@ -120,14 +131,10 @@ class ReviewControllerTest {
     void testAddEntryToReview() throws Exception {
         // Set up mocked service
         var mockReviewEntry = new ReviewEntry("test-user", new Date(), "Great product");
-        var mockReview = Review.builder().id("1").productId(1).version(1).build();
         var returnedReview = Review.builder().id("1").productId(1).version(2).entries(List.of(mockReviewEntry)).build();
 
-        // Handle lookup
-        doReturn(Optional.of(mockReview)).when(service).findByProductId(1);
-
-        // Handle save
-        doReturn(returnedReview).when(service).save(any());
+        // Handle the atomic append
+        doReturn(returnedReview).when(service).addEntry(eq(1), any());
 
         mockMvc.perform(post("/review/{productId}/entry", 1)
                         .contentType(MediaType.APPLICATION_JSON)
@@ -145,4 +152,310 @@ class ReviewControllerTest {
                 .andExpect(jsonPath("$.entries[0].username", is("test-user")))
                 .andExpect(jsonPath("$.entries[0].review", is("Great product")));
     }
+
+    @Test
+    @DisplayName("GET /reviews - First page")
+    void testGetReviewsFirstPage() throws Exception {
+        // Set up mocked service
+        var mockReview = Review.builder().id("1").productId(1).version(1).build();
+        var mockReview2 = Review.builder().id("2").productId(2).version(1).build();
+        doReturn(List.of(mockReview, mockReview2)).when(service).findPage(null, 2, false);
+
+        mockMvc.perform(get("/reviews").param("limit", "2").param("includeEntries", "false"))
+
+                // Validate the response code and the link to the next page
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.LINK,
+                        "</reviews?after=2&limit=2&includeEntries=false>; rel=\"next\""))
+
+                // Validate the returned fields
+                .andExpect(jsonPath("$.length()", is(2)))
+                .andExpect(jsonPath("$[0].id", is("1")))
+                .andExpect(jsonPath("$[1].id", is("2")));
+    }
+
+    @Test
+    @DisplayName("GET /reviews - Last page")
+    void testGetReviewsLastPage() throws Exception {
+        // Set up mocked service
+        var mockReview = Review.builder().id("3").productId(3).version(1).build();
+        doReturn(List.of(mockReview)).when(service).findPage("2", 2, true);
+
+        mockMvc.perform(get("/reviews").param("after", "2").param("limit", "2"))
+
+                // Validate that there is no next page
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.LINK))
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$[0].id", is("3")));
+    }
+
+    @Test
+    @DisplayName("GET /review/reviewId/entries - Newest first")
+    void testGetReviewEntriesNewestFirst() throws Exception {
+        // Set up mocked service
+        var entry = new ReviewEntry("test-user", new Date(), "Great product");
+        doReturn(Optional.of(List.of(entry))).when(service).findEntries("reviewId", 0, 1, true);
+
+        mockMvc.perform(get("/review/{id}/entries", "reviewId").param("limit", "1").param("order", "newest"))
+
+                // Validate the response code and the returned entries
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$[0].username", is("test-user")));
+    }
+
+    @Test
+    @DisplayName("GET /review/reviewId/entries - Bad order")
+    void testGetReviewEntriesBadOrder() throws Exception {
+        mockMvc.perform(get("/review/{id}/entries", "reviewId").param("order", "random"))
+
+                // Validate that the request is rejected
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("GET /review/99/entries - Not Found")
+    void testGetReviewEntriesNotFound() throws Exception {
+        doReturn(Optional.empty()).when(service).findEntries("99", 0, 10, false);
+
+        mockMvc.perform(get("/review/{id}/entries", "99"))
+
+                // Validate that we get a 404 Not Found response
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("GET /reviews/summary - Success")
+    void testGetReviewSummaries() throws Exception {
+        // Set up mocked service
+        doReturn(List.of(new ReviewSummary(1, 3, new Date()), new ReviewSummary(2, 0, null)))
+                .when(service).findSummaries(List.of(1, 2));
+
+        mockMvc.perform(get("/reviews/summary").param("productIds", "1,2"))
+
+                // Validate the response code and the returned summaries
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(2)))
+                .andExpect(jsonPath("$[0].productId", is(1)))
+                .andExpect(jsonPath("$[0].entryCount", is(3)))
+                .andExpect(jsonPath("$[1].entryCount", is(0)));
+    }
+
+    @Test
+    @DisplayName("POST /reviews/import - Success")
+    void testImportEntries() throws Exception {
+        // Set up mocked service
+        var result = new ImportResult();
+        result.setLines(2);
+        result.setImported(1);
+        result.setFailed(1);
+        result.getErrors().add(new ImportError(2L, "productId is required"));
+        doReturn(result).when(service).importEntries(any());
+
+        mockMvc.perform(post("/reviews/import")
+                        .contentType("application/x-ndjson")
+                        .content("{\"productId\": 1, \"username\": \"user1\"}\n{\"username\": \"user2\"}\n"))
+
+                // Validate the response code and the reported failures
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(1)))
+                .andExpect(jsonPath("$.failed", is(1)))
+                .andExpect(jsonPath("$.errors[0].line", is(2)));
+    }
+
+    @Test
+    @DisplayName("GET /reviews/search - Success")
+    void testSearchReviews() throws Exception {
+        // Set up mocked service
+        doReturn(List.of(new ReviewSearchHit(1, "test-user", new Date(), "Great product", 1.5)))
+                .when(service).search("great", 0, 20);
+
+        mockMvc.perform(get("/reviews/search").param("q", "great"))
+
+                // Validate the response code and the returned hits
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$[0].productId", is(1)))
+                .andExpect(jsonPath("$[0].review", is("Great product")));
+    }
+
+    @Test
+    @DisplayName("GET /reviews/by-user/test-user - Success")
+    void testGetReviewsByUser() throws Exception {
+        // Set up mocked service
+        doReturn(List.of(new ProductReviewEntry(1, "test-user", new Date(), "Great product")))
+                .when(service).findByUsername("test-user", 0, 20);
+
+        mockMvc.perform(get("/reviews/by-user/{username}", "test-user"))
+
+                // Validate the response code and the returned entries
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$[0].productId", is(1)))
+                .andExpect(jsonPath("$[0].username", is("test-user")));
+    }
+
+    @Test
+    @DisplayName("GET /reviews/export - Unknown field")
+    void testExportReviewsUnknownField() throws Exception {
+        mockMvc.perform(get("/reviews/export").param("fields", "productId,password"))
+
+                // Validate that the request is rejected
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("GET /review/reviewId - Not Modified")
+    void testGetReviewNotModified() throws Exception {
+        // Set up our mocked service
+        doReturn(Optional.of(3)).when(service).findVersion("reviewId");
+
+        mockMvc.perform(get("/review/{id}", "reviewId").header(HttpHeaders.IF_NONE_MATCH, "\"2\", W/\"3\""))
+
+                // Validate the response code and headers
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+
+        // The review itself is never read
+        verify(service, never()).findById(any());
+    }
+
+    @Test
+    @DisplayName("PUT /review/reviewId - Success")
+    void testUpdateReview() throws Exception {
+        // Set up our mocked service
+        var putReviewEntry = new ReviewEntry("test-user", new Date(), "Edited review");
+        var putReview = Review.builder().entries(List.of(putReviewEntry)).build();
+        var mockReview = Review.builder().id("reviewId").productId(1).version(3).entries(List.of(putReviewEntry)).build();
+        doReturn(Optional.of(mockReview)).when(service).update(any(), eq(2));
+
+        mockMvc.perform(put("/review/{id}", "reviewId")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"2\"")
+                        .content(asJsonString(putReview)))
+
+                // Validate the response code and headers
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(header().string(HttpHeaders.LOCATION, "/review/reviewId"))
+
+                // Validate the returned fields
+                .andExpect(jsonPath("$.version", is(3)))
+                .andExpect(jsonPath("$.entries[0].review", is("Edited review")));
+    }
+
+    @Test
+    @DisplayName("PUT /review/reviewId - Conflict")
+    void testUpdateReviewConflict() throws Exception {
+        // Set up our mocked service: the review moved on to version 3
+        var putReview = Review.builder().build();
+        doReturn(Optional.empty()).when(service).update(any(), eq(2));
+        doReturn(Optional.of(3)).when(service).findVersion("reviewId");
+
+        mockMvc.perform(put("/review/{id}", "reviewId")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "2")
+                        .content(asJsonString(putReview)))
+
+                // Validate that the stale update is rejected
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @DisplayName("POST /review/{productId}/entry - Conflict")
+    void testAddEntryToReviewConflict() throws Exception {
+        // Set up our mocked service
+        var reviewEntry = new ReviewEntry("test-user", null, "Great product");
+        doReturn(Optional.empty()).when(service).addEntry(eq(1), any(), eq(2));
+
+        mockMvc.perform(post("/review/{productId}/entry", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"2\"")
+                        .content(asJsonString(reviewEntry)))
+
+                // Validate that the entry is rejected
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @DisplayName("PUT /review/reviewId - Any Version")
+    void testUpdateReviewAnyVersion() throws Exception {
+        // Set up our mocked service: the review is at version 5
+        var putReview = Review.builder().build();
+        var mockReview = Review.builder().id("reviewId").productId(1).version(6).build();
+        doReturn(Optional.of(5)).when(service).findVersion("reviewId");
+        doReturn(Optional.of(mockReview)).when(service).update(any(), eq(5));
+
+        mockMvc.perform(put("/review/{id}", "reviewId")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "*")
+                        .content(asJsonString(putReview)))
+
+                // Validate that the update is applied to the current version
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"6\""));
+    }
+
+    @Test
+    @DisplayName("PUT /review/reviewId - Any Version Of No Review")
+    void testUpdateReviewAnyVersionNotFound() throws Exception {
+        doReturn(Optional.empty()).when(service).findVersion("reviewId");
+
+        mockMvc.perform(put("/review/{id}", "reviewId")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "*")
+                        .content(asJsonString(Review.builder().build())))
+
+                // Validate that "*" does not match a missing review
+                .andExpect(status().isPreconditionFailed());
+        verify(service, never()).update(any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("POST /review/{productId}/entry - Weak If-Match")
+    void testAddEntryToReviewWeakTag() throws Exception {
+        var reviewEntry = new ReviewEntry("test-user", null, "Great product");
+
+        mockMvc.perform(post("/review/{productId}/entry", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "W/\"2\"")
+                        .content(asJsonString(reviewEntry)))
+
+                // Validate that a weak tag is refused, since If-Match compares strongly
+                .andExpect(status().isBadRequest());
+        verify(service, never()).addEntry(any(), any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("POST /review/{productId}/entry - Any Version Of No Review")
+    void testAddEntryToReviewAnyVersionNotFound() throws Exception {
+        var reviewEntry = new ReviewEntry("test-user", null, "Great product");
+        doReturn(Optional.empty()).when(service).findByProductId(1);
+
+        mockMvc.perform(post("/review/{productId}/entry", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "*")
+                        .content(asJsonString(reviewEntry)))
+
+                // Validate that "*" does not create the review
+                .andExpect(status().isPreconditionFailed());
+        verify(service, never()).addEntry(any(), any());
+    }
+
+    @Test
+    @DisplayName("GET /reviews/export - Gzip Refused")
+    void testExportReviewsGzipRefused() throws Exception {
+        var mvcResult = mockMvc.perform(get("/reviews/export")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+
+                // Validate that a coding with a quality of 0 is not used
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING));
+    }
 }